@@ -0,0 +1,94 @@
+package ru.ifmo.testlib;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates files for the benchmarks.
+ *
+ * @author Maxim Buzdalov
+ */
+final class BenchmarkData {
+    private BenchmarkData() {}
+
+    /**
+     * Numbers separated by single spaces, ten numbers per line.
+     */
+    static final String DENSE = "dense";
+    /**
+     * Numbers separated by single spaces, a hundred thousand numbers per line.
+     */
+    static final String LONG_LINES = "long-lines";
+    /**
+     * Numbers separated by runs of up to sixteen spaces and tabs, ten numbers per line.
+     */
+    static final String WHITESPACE_HEAVY = "whitespace-heavy";
+    /**
+     * One number per line, lines separated by CRLF.
+     */
+    static final String CRLF = "crlf";
+
+    /**
+     * Generates a temporary file with numbers of the given shape.
+     * The file is deleted when the JVM exits.
+     *
+     * @param shape the shape of the file, one of the constants of this class.
+     * @param reals whether the numbers are real numbers with nine digits after the decimal point, or 32-bit integers.
+     * @param count the number of numbers.
+     * @param seed the seed for the random number generator.
+     * @return the generated file.
+     * @throws IOException if writing fails.
+     */
+    static File generate(String shape, boolean reals, int count, long seed) throws IOException {
+        File file = File.createTempFile("testlib4j-" + shape + "-", ".txt");
+        file.deleteOnExit();
+        Random random = new Random(seed);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            for (int i = 0; i < count; ++i) {
+                if (reals) {
+                    long fraction = (random.nextInt() & Integer.MAX_VALUE) % 1000000000;
+                    writer.write(random.nextInt(2000001) - 1000000 + ".");
+                    String fractionString = Long.toString(fraction);
+                    for (int j = fractionString.length(); j < 9; ++j) {
+                        writer.write('0');
+                    }
+                    writer.write(fractionString);
+                } else {
+                    writer.write(Integer.toString(random.nextInt()));
+                }
+                writeSeparator(writer, shape, i, random);
+            }
+        }
+        return file;
+    }
+
+    private static void writeSeparator(Writer writer, String shape, int index, Random random) throws IOException {
+        switch (shape) {
+            case DENSE:
+                writer.write(index % 10 == 9 ? '\n' : ' ');
+                break;
+            case LONG_LINES:
+                writer.write(index % 100000 == 99999 ? '\n' : ' ');
+                break;
+            case WHITESPACE_HEAVY:
+                for (int i = 1 + random.nextInt(16); i > 0; --i) {
+                    writer.write(random.nextInt(4) == 0 ? '\t' : ' ');
+                }
+                if (index % 10 == 9) {
+                    writer.write('\n');
+                }
+                break;
+            case CRLF:
+                writer.write("\r\n");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.ifmo.testlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * End-to-end benchmarks of the example checkers, run by {@link CheckerFramework#check}
+ * on an accepted output, which is the same as the answer.
+ *
+ * @author Maxim Buzdalov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckerBenchmark {
+    @Param({"false", "true"})
+    public String mapped;
+
+    @Param("1000000")
+    public int count;
+
+    private Checker compareIntegers;
+    private Checker compareInteger;
+    private Checker yesNo;
+
+    private File input;
+    private File integers;
+    private File integer;
+    private File yes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ReflectiveOperationException {
+        System.setProperty("testlib.mapped", mapped);
+        // The example checkers live in the default package, so they are loaded reflectively.
+        compareIntegers = (Checker) Class.forName("CompareIntegers").newInstance();
+        compareInteger = (Checker) Class.forName("CompareInteger").newInstance();
+        yesNo = (Checker) Class.forName("YesNo").newInstance();
+
+        integers = BenchmarkData.generate(BenchmarkData.DENSE, false, count, 6572341);
+        input = write("input", "This input is ignored.");
+        integer = write("integer", "42");
+        yes = write("yes", "YES");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.clearProperty("testlib.mapped");
+    }
+
+    private static File write(String prefix, String contents) throws IOException {
+        File file = File.createTempFile("testlib4j-" + prefix + "-", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            writer.println(contents);
+        }
+        return file;
+    }
+
+    private Outcome check(Checker checker, File outputAndAnswer) {
+        Outcome outcome = CheckerFramework.check(checker, input.getPath(), outputAndAnswer.getPath(), outputAndAnswer.getPath());
+        if (outcome.getType() != Outcome.Type.OK) {
+            throw new AssertionError(outcome.getType() + " " + outcome.getComment());
+        }
+        return outcome;
+    }
+
+    @Benchmark
+    public Outcome compareIntegers() {
+        return check(compareIntegers, integers);
+    }
+
+    @Benchmark
+    public Outcome compareInteger() {
+        return check(compareInteger, integer);
+    }
+
+    @Benchmark
+    public Outcome yesNo() {
+        return check(yesNo, yes);
+    }
+}
@@ -0,0 +1,183 @@
+package ru.ifmo.testlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for reading whole files with the methods of {@link InStream}.
+ *
+ * @author Maxim Buzdalov
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InStreamBenchmark {
+    @Param({BenchmarkData.DENSE, BenchmarkData.LONG_LINES, BenchmarkData.WHITESPACE_HEAVY, BenchmarkData.CRLF})
+    public String shape;
+
+    @Param({"file", "mapped", "cached"})
+    public String implementation;
+
+    @Param("1000000")
+    public int count;
+
+    private File integers;
+    private File reals;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        integers = BenchmarkData.generate(shape, false, count, 3124353);
+        reals = BenchmarkData.generate(shape, true, count, 7452321);
+        new File(integers.getPath() + TokenCache.SUFFIX).deleteOnExit();
+        new File(reals.getPath() + TokenCache.SUFFIX).deleteOnExit();
+    }
+
+    private InStream open(File file) {
+        EnumMap<Outcome.Type, Outcome.Type> mapping = new EnumMap<>(Outcome.Type.class);
+        switch (implementation) {
+            case "mapped":
+                return new MappedFileInStream(file, mapping);
+            case "cached":
+                // The cache is created by the first call, which happens during the warmup.
+                return new CachedInStream(file, StandardCharsets.UTF_8, TokenCache.open(file, StandardCharsets.UTF_8), mapping);
+            default:
+                return new FileInStream(file, mapping);
+        }
+    }
+
+    @Benchmark
+    public long nextChar() {
+        try (InStream in = open(integers)) {
+            long result = 0;
+            for (int c; (c = in.nextChar()) != InStream.EOF_CHAR; ) {
+                result += c;
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public long seekEoF() {
+        try (InStream in = open(integers)) {
+            long result = 0;
+            while (!in.seekEoF()) {
+                while (!in.isEoF() && !Character.isWhitespace(in.currChar())) {
+                    in.nextChar();
+                }
+                ++result;
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public long nextToken() {
+        try (InStream in = open(integers)) {
+            long result = 0;
+            while (!in.seekEoF()) {
+                result += in.nextToken().length();
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public long nextInt() {
+        try (InStream in = open(integers)) {
+            long result = 0;
+            while (!in.seekEoF()) {
+                result += in.nextInt();
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public long nextLong() {
+        try (InStream in = open(integers)) {
+            long result = 0;
+            while (!in.seekEoF()) {
+                result += in.nextLong();
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public double nextDouble() {
+        try (InStream in = open(reals)) {
+            double result = 0;
+            while (!in.seekEoF()) {
+                result += in.nextDouble();
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public long nextInts() {
+        try (InStream in = open(integers)) {
+            int[] values = new int[count];
+            in.nextInts(values, 0, count);
+            long result = 0;
+            for (int value : values) {
+                result += value;
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public long readAllLongs() {
+        try (InStream in = open(integers)) {
+            long result = 0;
+            for (long value : in.readAllLongs()) {
+                result += value;
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public double nextDoubles() {
+        try (InStream in = open(reals)) {
+            double[] values = new double[count];
+            in.nextDoubles(values, 0, count);
+            double result = 0;
+            for (double value : values) {
+                result += value;
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public long nextBigInteger() {
+        try (InStream in = open(integers)) {
+            long result = 0;
+            while (!in.seekEoF()) {
+                result += in.nextBigInteger().bitLength();
+            }
+            return result;
+        }
+    }
+
+    @Benchmark
+    public long nextLine() {
+        try (InStream in = open(integers)) {
+            long result = 0;
+            while (!in.isEoF()) {
+                result += in.nextLine().length();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ru.ifmo.testlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the wall-clock time of running a checker once in a new JVM, which is dominated by the startup time.
+ *
+ * Three launches are compared: the checker class is found in the manifests on the class path,
+ * the checker class is given by the {@code testlib.checker} property, and the latter plus the AppCDS archive
+ * created by the {@code cds-archive} Ant target. JMH is not used here, since it cannot measure JVM startup.
+ *
+ * Usage: {@code <runs> <class_path> <checker_class> <cds_argfile> <input_file> <output_file> <answer_file>}.
+ *
+ * @author Maxim Buzdalov
+ */
+public class StartupBenchmark {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 7) {
+            System.err.println("Usage: <runs> <class_path> <checker_class> <cds_argfile> <input_file> <output_file> <answer_file>");
+            System.exit(1);
+        }
+        int runs = Integer.parseInt(args[0]);
+        String classPath = args[1];
+        String checkerClass = args[2];
+        String argFile = args[3];
+        List<String> files = Arrays.asList(args[4], args[5], args[6]);
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+        List<String> manifest = new ArrayList<>(Arrays.asList(java, "-cp", classPath));
+        List<String> property = new ArrayList<>(Arrays.asList(java, "-Dtestlib.checker=" + checkerClass, "-cp", classPath));
+        List<String> archive = new ArrayList<>(Arrays.asList(java, "@" + argFile));
+        for (List<String> command : Arrays.asList(manifest, property, archive)) {
+            command.add("ru.ifmo.testlib.CheckerFramework");
+            command.addAll(files);
+        }
+
+        // One warm-up run of each kind, to get files into the OS cache.
+        measure(manifest, 1);
+        measure(property, 1);
+        measure(archive, 1);
+
+        report("Checker-Class in the manifest, JDK default CDS", measure(manifest, runs));
+        report("testlib.checker property, JDK default CDS", measure(property, runs));
+        report("testlib.checker property, AppCDS", measure(archive, runs));
+    }
+
+    private static long[] measure(List<String> command, int runs) throws IOException, InterruptedException {
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; ++i) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command)
+                    .redirectOutput(discard())
+                    .redirectErrorStream(true)
+                    .start();
+            process.waitFor();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times;
+    }
+
+    // ProcessBuilder.Redirect.DISCARD is not available in Java 8.
+    private static ProcessBuilder.Redirect discard() {
+        return ProcessBuilder.Redirect.to(new File(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null"));
+    }
+
+    private static void report(String name, long[] times) {
+        long sum = 0;
+        for (long time : times) {
+            sum += time;
+        }
+        System.out.printf("%-45s median %6.1f ms, mean %6.1f ms, min %6.1f ms%n",
+                name, times[times.length / 2] / 1e6, sum / 1e6 / times.length, times[0] / 1e6);
+    }
+}
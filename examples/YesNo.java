@@ -1,25 +1,33 @@
 import ru.ifmo.testlib.Checker;
 import ru.ifmo.testlib.InStream;
 import ru.ifmo.testlib.Outcome;
+import ru.ifmo.testlib.Token;
 
 public final class YesNo implements Checker {
-    private String nextAnswer(InStream stream) {
-        String token = stream.nextToken();
-        if (!token.equals("YES") && !token.equals("NO")) {
-            throw stream.quit(Outcome.Type.PE, "Expected 'YES' or 'NO', found '%s'", token);
+    // The token views are compared in place, so no strings are created unless the answer is malformed.
+    private boolean nextAnswer(InStream stream) {
+        Token token = stream.nextTokenView();
+        if (token.contentEquals("YES")) {
+            return true;
+        } else if (token.contentEquals("NO")) {
+            return false;
         } else {
-            return token;
+            throw stream.quit(Outcome.Type.PE, "Expected 'YES' or 'NO', found '%s'", token.toString());
         }
     }
 
+    private static String toString(boolean answer) {
+        return answer ? "YES" : "NO";
+    }
+
     @Override
     public Outcome test(InStream inf, InStream ouf, InStream ans) {
-        String expected = nextAnswer(ans);
-        String found = nextAnswer(ouf);
-        if (expected.equals(found)) {
-            return new Outcome(Outcome.Type.OK, expected);
+        boolean expected = nextAnswer(ans);
+        boolean found = nextAnswer(ouf);
+        if (expected == found) {
+            return new Outcome(Outcome.Type.OK, toString(expected));
         } else {
-            return Outcome.quit(Outcome.Type.WA, "Expected %s found %s", expected, found);
+            return Outcome.quit(Outcome.Type.WA, "Expected %s found %s", toString(expected), toString(found));
         }
     }
 }
@@ -0,0 +1,10 @@
+package test;
+
+import ru.ifmo.testlib.*;
+import static ru.ifmo.testlib.Outcome.Type.*;
+
+public final class BadFormatTest implements Checker {
+    public Outcome test(InStream inf, InStream ouf, InStream ans) {
+        throw Outcome.quit(WA, "The answer is %d", ans.nextToken());
+    }
+}
@@ -0,0 +1,30 @@
+package test;
+
+import ru.ifmo.testlib.*;
+import static ru.ifmo.testlib.Outcome.Type.*;
+
+public final class BulkReadTest implements Checker {
+    public Outcome test(InStream inf, InStream ouf, InStream ans) {
+        long[] expected = ans.readAllLongs();
+        int count = expected.length;
+        ans.reset();
+        int[] ints = new int[count + 1];
+        ans.nextInts(ints, 1, count);
+        ans.reset();
+        double[] doubles = new double[count];
+        ans.nextDoubles(doubles, 0, count);
+        for (int i = 0; i < count; ++i) {
+            if (ints[i + 1] != expected[i] || doubles[i] != expected[i]) {
+                return new Outcome(FAIL, "Number " + (i + 1) + " of the answer is read differently");
+            }
+        }
+        long[] found = new long[count];
+        ouf.nextLongs(found, 0, count);
+        for (int i = 0; i < count; ++i) {
+            if (expected[i] != found[i]) {
+                return new Outcome(WA, "Number " + (i + 1) + " differs: expected " + expected[i] + ", found " + found[i]);
+            }
+        }
+        return new Outcome(OK, count + " number(s)");
+    }
+}
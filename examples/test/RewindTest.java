@@ -0,0 +1,29 @@
+package test;
+
+import ru.ifmo.testlib.*;
+import static ru.ifmo.testlib.Outcome.Type.*;
+
+public final class RewindTest implements Checker {
+    public Outcome test(InStream inf, InStream ouf, InStream ans) {
+        long mark = ans.mark();
+        int count = 0;
+        while (!ans.seekEoF()) {
+            ans.nextToken();
+            ++count;
+        }
+        ans.rewind(mark);
+        for (int i = 1; i <= count; ++i) {
+            long position = ouf.position();
+            String expected = ans.nextToken();
+            String found = ouf.nextToken();
+            ouf.seek(position);
+            if (!found.equals(ouf.nextToken())) {
+                return new Outcome(FAIL, "Token " + i + " is different after seeking back to it");
+            }
+            if (!expected.equals(found)) {
+                return new Outcome(WA, "Token " + i + " differs: expected " + expected + ", found " + found);
+            }
+        }
+        return new Outcome(OK, count + " token(s)");
+    }
+}
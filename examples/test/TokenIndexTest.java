@@ -0,0 +1,26 @@
+package test;
+
+import ru.ifmo.testlib.*;
+import static ru.ifmo.testlib.Outcome.Type.*;
+
+public final class TokenIndexTest implements Checker {
+    public Outcome test(InStream inf, InStream ouf, InStream ans) {
+        TokenIndex answer = ans.tokenIndex();
+        TokenIndex output = ouf.tokenIndex();
+        if (answer.tokenCount() != output.tokenCount()) {
+            return new Outcome(WA, "Expected " + answer.tokenCount() + " token(s), found " + output.tokenCount());
+        }
+        // The tokens are compared from the last one, and the output is also read in order, which the index does not affect.
+        for (long k = answer.tokenCount() - 1; k >= 0; --k) {
+            if (!answer.tokenAt(k).equals(output.tokenAt(k))) {
+                return new Outcome(WA, "Token " + k + " differs");
+            }
+        }
+        for (long k = 0; k < output.tokenCount(); ++k) {
+            if (!ouf.nextToken().equals(output.tokenAt(k))) {
+                return new Outcome(FAIL, "Token " + k + " is different when read in order");
+            }
+        }
+        return new Outcome(OK, answer.tokenCount() + " token(s) in " + answer.lineCount() + " line(s)");
+    }
+}
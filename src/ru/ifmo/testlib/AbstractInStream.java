@@ -0,0 +1,1077 @@
+package ru.ifmo.testlib;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A base for {@link InStream} implementations, which read bytes from some source
+ * and decode them into characters with the given charset.
+ *
+ * ASCII characters are taken directly from the byte buffer.
+ * Other characters are decoded with a strict UTF-8 decoder if the charset is UTF-8,
+ * or with a precomputed table if the charset is a single-byte one.
+ * Other charsets are not supported.
+ * Characters outside the Basic Multilingual Plane are returned as surrogate pairs.
+ *
+ * @author Maxim Buzdalov
+ * @author Andrew Stankevich
+ * @author Dmitry Paraschenko
+ * @author Sergey Melnikov
+ */
+abstract class AbstractInStream implements InStream, MeasuredStream {
+    /** The size of the byte buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The maximum number of bytes kept in the buffer after the mark, if the source cannot seek. */
+    private static final int MAX_MARKED_BYTES = 1 << 24;
+
+    /** The marker of a byte which is not valid in a single-byte charset. */
+    private static final int INVALID_BYTE = -2;
+
+    /** The outcome mapping to be used for this stream. */
+    final Map<Outcome.Type, Outcome.Type> outcomeMapping;
+
+    /** The charset of the stream. */
+    final Charset charset;
+
+    /** Whether the charset is UTF-8. */
+    private final boolean isUTF8;
+
+    /** Whether bytes from 0 to 127 always mean the corresponding ASCII characters. */
+    private final boolean isAsciiCompatible;
+
+    /** The characters for all bytes, if the charset is a single-byte one. */
+    private final int[] byteToChar;
+
+    /** The byte buffer, which grows while the bytes after the mark are kept. */
+    private byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** The index of the first byte in the buffer which is not yet decoded. */
+    private int position;
+
+    /** The number of valid bytes in the buffer. */
+    private int limit;
+
+    /** The offset of the beginning of the buffer in the source. */
+    private long bufferOffset;
+
+    /** The offset of the mark in the source, if the bytes after it are kept in the buffer, or -1 otherwise. */
+    private long markOffset = -1;
+
+    /** Whether the source has no more bytes. */
+    private boolean isSourceExhausted;
+
+    /** Whether the current character is the high surrogate of a character which starts at {@link #position}. */
+    private boolean isHighSurrogate;
+
+    /** Current character. */
+    private int currChar;
+
+    /** The characters of the last token read by {@link #readToken(String, String)} or {@link #readToken()}. */
+    private char[] token = new char[64];
+
+    /** The length of the last token. */
+    private int tokenLength;
+
+    /** The view of the last token read by {@link #nextTokenView()}. */
+    private final Token tokenView = new Token();
+
+    /** The last integer parsed by {@link #parseIntegerInBuffer(long, long)}. */
+    private long parsedInteger;
+
+    /** The number of tokens read, including the ones read before the stream was reset. */
+    private long tokenCount;
+
+    /** The number of tokens read before the last refill of the buffer. */
+    private long tokenCountAtRefill;
+
+    /** The maximum length of a token, in characters. */
+    private long maxTokenLength = Long.MAX_VALUE;
+
+    /** The maximum length of a line read by {@link #nextLine()}, in characters. */
+    private long maxLineLength = Long.MAX_VALUE;
+
+    /** The maximum number of bytes to read from the source. */
+    private long maxBytes = Long.MAX_VALUE;
+
+    /** The index of the tokens and the lines, or {@code null} if it is not created yet. */
+    private TokenIndex index;
+
+    /**
+     * Creates a new stream with the specified charset and outcome mapping.
+     *
+     * @param charset the charset.
+     * @param outcomeMapping the outcome mapping.
+     * @throws IllegalArgumentException if the charset is neither UTF-8 nor a single-byte charset.
+     */
+    AbstractInStream(Charset charset, Map<Outcome.Type, Outcome.Type> outcomeMapping) {
+        this.outcomeMapping = outcomeMapping;
+        this.charset = charset;
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            isUTF8 = true;
+            isAsciiCompatible = true;
+            byteToChar = null;
+        } else {
+            isUTF8 = false;
+            byteToChar = createByteToCharTable(charset);
+            boolean isAsciiCompatible = true;
+            for (int i = 0; i < 128; ++i) {
+                isAsciiCompatible &= byteToChar[i] == i;
+            }
+            this.isAsciiCompatible = isAsciiCompatible;
+        }
+    }
+
+    /**
+     * Reads bytes from the source into the given array.
+     *
+     * @param buffer the array to read into.
+     * @param offset the offset in the array to start with.
+     * @param length the maximum number of bytes to read.
+     * @return the number of bytes read, or -1 if the source has no more bytes.
+     * @throws IOException if reading fails.
+     */
+    abstract int read(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Moves the source so that the next read returns the byte at the given offset, or, if the source cannot do that,
+     * to an offset before the given one from which the source can be read, which is either the current offset,
+     * if it does not exceed the given one, or the beginning of the source.
+     *
+     * @param offset the offset to move to.
+     * @param current the offset of the byte which the next read would return.
+     * @return the offset the source is moved to, which is at most the size of the source.
+     * @throws IOException if moving fails.
+     */
+    abstract long seekSource(long offset, long current) throws IOException;
+
+    /**
+     * Returns whether {@link #seekSource(long, long)} moves to any given offset cheaply.
+     * If it does not, the bytes after the mark are kept in the buffer, see {@link #mark()}.
+     *
+     * @return whether the source can seek.
+     */
+    abstract boolean isSeekable();
+
+    /**
+     * Opens another stream which reads the same source from the beginning.
+     * The stream is used by the {@link TokenIndex}, so it does not read ahead.
+     *
+     * @return the new stream.
+     */
+    abstract AbstractInStream openAnother();
+
+    /**
+     * Closes the index of the tokens and the lines, if it is created.
+     * This shall be called by the implementations when they are closed.
+     */
+    void closeIndex() {
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+    }
+
+    /**
+     * Starts reading from the beginning of the source.
+     * This shall be called by the implementations every time they reopen the source.
+     */
+    void startReading() {
+        position = 0;
+        limit = 0;
+        bufferOffset = 0;
+        isSourceExhausted = false;
+        isHighSurrogate = false;
+        nextChar();
+    }
+
+    public void reset() {
+        seek(0);
+    }
+
+    public long position() {
+        return bufferOffset + position - currCharLength();
+    }
+
+    public TokenIndex tokenIndex() {
+        if (index == null) {
+            AbstractInStream reader = openAnother();
+            reader.setLimits(maxTokenLength, maxLineLength, maxBytes);
+            index = new TokenIndex(this, reader);
+        }
+        return index;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The bytes between the position and the offset are skipped without decoding them.
+     * If the offset is in the buffer, this takes constant time. Otherwise, the source is moved to the offset,
+     * which also takes constant time for uncompressed files. Compressed files are read again from the beginning,
+     * unless the offset is ahead, or is the mark whose bytes are still in the buffer.
+     */
+    public void seek(long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("The position is negative: " + offset);
+        }
+        long end = bufferOffset + limit;
+        if (offset < bufferOffset || offset > end) {
+            try {
+                bufferOffset = seekSource(offset, end);
+            } catch (IOException ex) {
+                throw quit(Outcome.Type.PE, ex.getMessage());
+            }
+            position = 0;
+            limit = 0;
+            isSourceExhausted = false;
+            while (bufferOffset + limit < offset) {
+                position = limit;
+                if (fillBuffer() == 0) {
+                    break;
+                }
+            }
+        }
+        position = (int) Math.min(offset - bufferOffset, limit);
+        isHighSurrogate = false;
+        nextChar();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * If the source cannot seek, for instance, if the file is compressed, the bytes after the mark are kept
+     * in the buffer, so that rewinding is cheap, but at most {@value #MAX_MARKED_BYTES} of them.
+     * If more bytes are read after the mark, rewinding reads the source again.
+     */
+    @Override
+    public long mark() {
+        long result = position();
+        markOffset = isSeekable() ? -1 : result;
+        return result;
+    }
+
+    /**
+     * Returns the number of bytes of the current character before {@link #position}.
+     */
+    private int currCharLength() {
+        int c = currChar;
+        if (c == EOF_CHAR || isHighSurrogate) {
+            return 0;
+        }
+        if (!isUTF8 || c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800) {
+            return 2;
+        }
+        return Character.isLowSurrogate((char) c) ? 4 : 3;
+    }
+
+    @Override
+    public long matchWords(InStream other) {
+        if (other instanceof CachedInStream) {
+            return other.matchWords(this);
+        }
+        if (other instanceof AbstractInStream) {
+            AbstractInStream that = (AbstractInStream) other;
+            if (this.unreadFirstByte() && that.unreadFirstByte()) {
+                long count = matchWordBytes(this, that);
+                if (count >= 0) {
+                    currChar = that.currChar = EOF_CHAR;
+                    tokenCount += count;
+                    that.tokenCount += count;
+                    return count;
+                }
+            }
+        }
+        reset();
+        other.reset();
+        return -1;
+    }
+
+    /**
+     * Prepares the stream for {@link #matchWordBytes(AbstractInStream, AbstractInStream)} by making the first byte
+     * of the stream the next one to read. This is possible only if nothing has been read from the stream yet,
+     * and the charset and the first character are compatible with ASCII.
+     *
+     * @return {@code true} if the stream is prepared, {@code false} otherwise.
+     */
+    private boolean unreadFirstByte() {
+        if (!isAsciiCompatible || bufferOffset != 0) {
+            return false;
+        }
+        if (currChar == EOF_CHAR) {
+            return limit == 0;
+        }
+        if (currChar < 0x80 && position == 1) {
+            position = 0;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compares the remaining bytes of the two streams as sequences of words delimited by runs of ASCII whitespace.
+     * The comparison gives up at the first difference, or at the first non-ASCII byte,
+     * since non-ASCII whitespace and malformed input are left to the character-level comparison.
+     *
+     * @return the number of words if the words are the same, or -1 otherwise.
+     */
+    private static long matchWordBytes(AbstractInStream expected, AbstractInStream found) {
+        long count = 0;
+        while (true) {
+            int e = expected.skipAsciiWhitespace();
+            int f = found.skipAsciiWhitespace();
+            if (e == EOF_CHAR && f == EOF_CHAR) {
+                return count;
+            }
+            if (e < 0 || f < 0 || !matchWordBytesOnce(expected, found)) {
+                return -1;
+            }
+            ++count;
+        }
+    }
+
+    /**
+     * Compares the words which start at the current positions of both streams.
+     *
+     * @return {@code true} if the words are the same, {@code false} if they differ or contain non-ASCII bytes.
+     */
+    private static boolean matchWordBytesOnce(AbstractInStream expected, AbstractInStream found) {
+        while (true) {
+            if (expected.position == expected.limit) {
+                expected.fillBuffer();
+            }
+            if (found.position == found.limit) {
+                found.fillBuffer();
+            }
+            int length = Math.min(expected.limit - expected.position, found.limit - found.position);
+            if (length == 0) {
+                // At least one of the streams is at the end of file, so the other one shall be at the end of the word.
+                return expected.isEndOfAsciiWord() && found.isEndOfAsciiWord();
+            }
+            byte[] e = expected.buffer, f = found.buffer;
+            int ep = expected.position, fp = found.position;
+            // The blocks compared at once grow, so that short words are not compared far beyond their ends.
+            int i = 0, block = 16;
+            while (i < length) {
+                int end = Math.min(length, i + block);
+                int mismatch = ByteKernels.mismatch(e, ep + i, f, fp + i, end - i);
+                if (mismatch >= 0) {
+                    end = i + mismatch;
+                }
+                // All the whitespace and non-ASCII bytes are below or equal to the space when signed.
+                int special = ByteKernels.indexOfSpaceOrBelow(e, ep + i, ep + end) - ep;
+                if (special == end && mismatch < 0) {
+                    i = end;
+                    block = Math.min(2 * block, BUFFER_SIZE);
+                    continue;
+                }
+                i = special;
+                byte eb = e[ep + i], fb = f[fp + i];
+                if (eb < 0 || fb < 0) {
+                    return false;
+                }
+                boolean expectedEnds = isAsciiWhitespace(eb), foundEnds = isAsciiWhitespace(fb);
+                if (expectedEnds && foundEnds) {
+                    expected.position = ep + i;
+                    found.position = fp + i;
+                    return true;
+                }
+                if (expectedEnds || foundEnds || eb != fb) {
+                    return false;
+                }
+                ++i;
+            }
+            expected.position = ep + length;
+            found.position = fp + length;
+        }
+    }
+
+    /**
+     * Skips the ASCII whitespace bytes.
+     *
+     * @return the next byte, {@link #EOF_CHAR} if the end of file is reached, or -2 if the next byte is not ASCII.
+     */
+    private int skipAsciiWhitespace() {
+        while (true) {
+            if (position == limit && fillBuffer() == 0) {
+                return EOF_CHAR;
+            }
+            position = ByteKernels.indexOfNonMember(buffer, position, limit, DelimiterSet.WHITESPACE);
+            if (position < limit) {
+                byte b = buffer[position];
+                return b < 0 ? -2 : b;
+            }
+        }
+    }
+
+    private boolean isEndOfAsciiWord() {
+        return position == limit || buffer[position] >= 0 && isAsciiWhitespace(buffer[position]);
+    }
+
+    /**
+     * Checks whether the ASCII character is whitespace in the sense of {@link Character#isWhitespace(int)}.
+     */
+    private static boolean isAsciiWhitespace(int c) {
+        return c == ' ' || '\t' <= c && c <= '\r' || 0x1C <= c && c <= 0x1F;
+    }
+
+    /**
+     * Sets the limits which guard against pathological input, such as a contestant's output which consists
+     * of a single huge token. When a limit is exceeded, the stream quits with {@link Outcome.Type#PE}.
+     * The limits take constant memory to enforce. The reading which is done character by character outside
+     * of the stream, for instance, with {@link #nextChar()}, is bounded only by the limit on the number of bytes.
+     *
+     * @param maxTokenLength the maximum length of a token, in characters.
+     * @param maxLineLength the maximum length of a line read by {@link #nextLine()}, in characters.
+     * @param maxBytes the maximum number of bytes to read from the source.
+     */
+    void setLimits(long maxTokenLength, long maxLineLength, long maxBytes) {
+        this.maxTokenLength = maxTokenLength;
+        this.maxLineLength = maxLineLength;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public long maxTokenLength() {
+        return maxTokenLength;
+    }
+
+    public long bytesConsumed() {
+        return bufferOffset + position;
+    }
+
+    public long tokensConsumed() {
+        return tokenCount;
+    }
+
+    public int currChar() {
+        return currChar;
+    }
+
+    public int nextChar() {
+        int result = currChar;
+        int position = this.position;
+        if (position < limit) {
+            byte b = buffer[position];
+            if (b >= 0 && isAsciiCompatible) {
+                this.position = position + 1;
+                currChar = b;
+                return result;
+            }
+        }
+        currChar = decodeNextChar();
+        return result;
+    }
+
+    public void setOutcomeMapping(Outcome.Type from, Outcome.Type to) {
+        outcomeMapping.put(from, to);
+    }
+
+    public boolean isEoF() {
+        return currChar() == EOF_CHAR;
+    }
+
+    public boolean isEoLn() {
+        int currChar = currChar();
+        return currChar == EOF_CHAR || currChar == '\r' || currChar == '\n';
+    }
+
+    public boolean seekEoF() {
+        skip(DelimiterSet.WHITESPACE);
+        return isEoF();
+    }
+
+    public boolean seekEoLn() {
+        skip(DelimiterSet.WHITESPACE_IN_LINE);
+        return isEoLn();
+    }
+
+    public void skipLine() {
+        while (!isEoLn()) {
+            nextChar();
+        }
+        if (currChar() == '\r') nextChar();
+        if (currChar() == '\n') nextChar();
+    }
+
+    public void skip(String skip) {
+        skip(DelimiterSet.of(skip));
+    }
+
+    public String nextToken(String before, String after) {
+        readToken(before, after);
+        return tokenString();
+    }
+
+    public String nextToken(String skip) {
+        return nextToken(skip, skip);
+    }
+
+    public String nextToken() {
+        readToken();
+        return tokenString();
+    }
+
+    public Token nextTokenView() {
+        int end = findTokenInBuffer();
+        if (end >= 0) {
+            tokenView.set(buffer, position - 1, end - position + 1);
+            skipTokenInBuffer(end);
+        } else {
+            readToken();
+            tokenView.set(token, 0, tokenLength);
+        }
+        return tokenView;
+    }
+
+    public int nextInt() {
+        if (parseIntegerInBuffer(Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+            return (int) parsedInteger;
+        }
+        readToken();
+        try {
+            return (int) parseInteger(token, tokenLength, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        } catch (NumberFormatException ex) {
+            throw quit(Outcome.Type.PE, "A 32-bit signed integer expected, %s found", shortenIfTooLong(tokenString()));
+        }
+    }
+
+    public long nextLong() {
+        if (parseIntegerInBuffer(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            return parsedInteger;
+        }
+        readToken();
+        try {
+            return parseInteger(token, tokenLength, Long.MIN_VALUE, Long.MAX_VALUE);
+        } catch (NumberFormatException ex) {
+            throw quit(Outcome.Type.PE, "A 64-bit signed integer expected, %s found", shortenIfTooLong(tokenString()));
+        }
+    }
+
+    public BigInteger nextBigInteger() {
+        readToken();
+        tokenView.set(token, 0, tokenLength);
+        try {
+            return DecimalIntegers.parse(tokenView);
+        } catch (NumberFormatException ex) {
+            throw quit(Outcome.Type.PE, "An integer expected, %s found", shortenIfTooLong(tokenString()));
+        }
+    }
+
+    public float nextFloat() {
+        int end = findTokenInBuffer();
+        if (end >= 0) {
+            float v = FastDoubleParser.parseFloat(buffer, position - 1, end);
+            if (v == v) {
+                skipTokenInBuffer(end);
+                return v;
+            }
+        }
+        String word = nextToken();
+        try {
+            return Float.parseFloat(word);
+        } catch (NumberFormatException ex) {
+            throw quit(Outcome.Type.PE, "A float number expected, %s found", shortenIfTooLong(word));
+        }
+    }
+
+    public double nextDouble() {
+        int end = findTokenInBuffer();
+        if (end >= 0) {
+            double v = FastDoubleParser.parseDouble(buffer, position - 1, end);
+            if (v == v) {
+                skipTokenInBuffer(end);
+                return v;
+            }
+        }
+        String word = nextToken();
+        try {
+            double v = Double.parseDouble(word);
+            if (Double.isInfinite(v) || Double.isNaN(v)) {
+                throw new NumberFormatException(word);
+            }
+            return v;
+        } catch (NumberFormatException ex) {
+            throw quit(Outcome.Type.PE, "A double number expected, %s found", shortenIfTooLong(word));
+        }
+    }
+
+    public String nextLine() {
+        StringBuilder sb = new StringBuilder();
+        while (!isEoLn()) {
+            if (sb.length() == maxLineLength) {
+                throw quit(Outcome.Type.PE, "A line is too long: more than %d characters", maxLineLength);
+            }
+            sb.append((char) (currChar()));
+            nextChar();
+        }
+        if (currChar() == '\r') nextChar();
+        if (currChar() == '\n') nextChar();
+
+        return sb.toString();
+    }
+
+    /**
+     * Throws a new outcome with the given type and message,
+     * where the type is adjusted in order to match the semantics of this particular stream.
+     *
+     * @param type the type of the outcome.
+     * @param message the message to be specified in the outcome.
+     * @return the newly created outcome (actually it is thrown, but you can safely say {@code return quit(...)}.
+     * @throws Outcome the newly created outcome.
+     */
+    public Outcome quit(Outcome.Type type, String message) {
+        throw new Outcome(outcomeMapping.getOrDefault(type, type), message);
+    }
+
+    @Override
+    public Outcome quit(Outcome.Type type, String formatString, Object... arguments) {
+        throw new Outcome(outcomeMapping.getOrDefault(type, type), formatString, arguments);
+    }
+
+    private int decodeNextChar() {
+        if (position == limit && fillBuffer() == 0) {
+            return EOF_CHAR;
+        }
+        int b = buffer[position] & 0xFF;
+        if (!isUTF8) {
+            int c = byteToChar[b];
+            if (c == INVALID_BYTE) {
+                throw malformedInput();
+            }
+            ++position;
+            return c;
+        }
+        if (b < 0x80) {
+            ++position;
+            return b;
+        }
+        int length, codePoint, minimum;
+        if (0xC2 <= b && b <= 0xDF) {
+            length = 2;
+            codePoint = b & 0x1F;
+            minimum = 0x80;
+        } else if (0xE0 <= b && b <= 0xEF) {
+            length = 3;
+            codePoint = b & 0x0F;
+            minimum = 0x800;
+        } else if (0xF0 <= b && b <= 0xF4) {
+            length = 4;
+            codePoint = b & 0x07;
+            minimum = 0x10000;
+        } else {
+            throw malformedInput();
+        }
+        if (limit - position < length && fillBuffer() < length) {
+            throw malformedInput();
+        }
+        for (int i = 1; i < length; ++i) {
+            int next = buffer[position + i];
+            if ((next & 0xC0) != 0x80) {
+                throw malformedInput();
+            }
+            codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+        if (codePoint < minimum || codePoint > Character.MAX_CODE_POINT
+                || Character.MIN_SURROGATE <= codePoint && codePoint <= Character.MAX_SURROGATE) {
+            throw malformedInput();
+        }
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            position += length;
+            return codePoint;
+        }
+        // The position is not moved when the high surrogate is returned,
+        // so that the fast path in nextChar() does not interfere with the low surrogate.
+        if (isHighSurrogate) {
+            isHighSurrogate = false;
+            position += length;
+            return Character.lowSurrogate(codePoint);
+        } else {
+            isHighSurrogate = true;
+            return Character.highSurrogate(codePoint);
+        }
+    }
+
+    /**
+     * Moves the undecoded bytes, as well as the bytes after the mark if they are kept,
+     * to the beginning of the buffer, and reads more bytes from the source,
+     * so that enough bytes are available to decode any character, unless the source is exhausted.
+     *
+     * @return the number of bytes available for decoding.
+     */
+    private int fillBuffer() {
+        int keep = position;
+        if (markOffset >= 0) {
+            long marked = markOffset - bufferOffset;
+            if (0 <= marked && limit - Math.min(marked, position) <= MAX_MARKED_BYTES) {
+                keep = (int) Math.min(marked, position);
+            } else {
+                markOffset = -1;
+            }
+        }
+        // While the bytes after the mark are kept, they are moved only when there is no room after them.
+        if (keep == position || buffer.length - limit < 4) {
+            int remaining = limit - keep;
+            int capacity = remaining > buffer.length / 2 ? 2 * buffer.length : markOffset < 0 ? BUFFER_SIZE : buffer.length;
+            byte[] target = capacity == buffer.length ? buffer : new byte[capacity];
+            System.arraycopy(buffer, keep, target, 0, remaining);
+            buffer = target;
+            bufferOffset += keep;
+            position -= keep;
+            limit = remaining;
+        }
+        if (limit - position >= 4 || isSourceExhausted) {
+            return limit - position;
+        }
+        int start = limit;
+        Object event = Events.beginBufferRefill();
+        try {
+            while (limit - position < 4 && !isSourceExhausted) {
+                int read = read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    isSourceExhausted = true;
+                } else {
+                    limit += read;
+                }
+            }
+        } catch (IOException ex) {
+            throw quit(Outcome.Type.PE, ex.getMessage());
+        }
+        Events.endBufferRefill(event, bufferOffset + start, limit - start, tokenCount - tokenCountAtRefill);
+        tokenCountAtRefill = tokenCount;
+        if (bufferOffset + limit > maxBytes) {
+            throw quit(Outcome.Type.PE, "The file is too large: more than %d bytes", maxBytes);
+        }
+        return limit - position;
+    }
+
+    private Outcome malformedInput() {
+        throw quit(Outcome.Type.PE, "Malformed %s input at byte %d", charset.name(), bufferOffset + position);
+    }
+
+    private static int[] createByteToCharTable(Charset charset) {
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) {
+            throw new IllegalArgumentException("The charset " + charset.name() + " is neither UTF-8 nor a single-byte charset");
+        }
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        int[] result = new int[256];
+        for (int i = 0; i < 256; ++i) {
+            try {
+                CharBuffer decoded = decoder.decode(ByteBuffer.wrap(new byte[] { (byte) i }));
+                result[i] = decoded.length() == 1 ? decoded.get(0) : INVALID_BYTE;
+            } catch (CharacterCodingException ex) {
+                result[i] = INVALID_BYTE;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the next token with the specified delimiters into the token buffer.
+     *
+     * @param before the {@link String} containing characters to be used as delimiters before the token.
+     * @param after the {@link String} containing characters to be used as delimiters after the token.
+     */
+    private void readToken(String before, String after) {
+        readToken(DelimiterSet.of(before), DelimiterSet.of(after));
+    }
+
+    /**
+     * Reads the next token delimited by spaces, tabs and line breaks into the token buffer.
+     */
+    private void readToken() {
+        readToken(DelimiterSet.DEFAULT, DelimiterSet.DEFAULT);
+    }
+
+    /**
+     * Reads the next token with the specified delimiters into the token buffer.
+     * The runs of ASCII characters are scanned in the byte buffer, many bytes at once.
+     *
+     * @param before the delimiters before the token.
+     * @param after the delimiters after the token.
+     */
+    private void readToken(DelimiterSet before, DelimiterSet after) {
+        skip(before);
+        int c = currChar;
+        if (c == EOF_CHAR) {
+            throw quit(Outcome.Type.PE, "Unexpected end of file");
+        }
+        char[] token = this.token;
+        int length = 0;
+        while (c != EOF_CHAR && !after.contains(c)) {
+            if (length == token.length) {
+                token = this.token = growToken(length);
+            }
+            token[length++] = (char) c;
+            if (c < 0x80 && isAsciiCompatible) {
+                // The current character is the byte before the position, so the bytes which follow it are copied.
+                byte[] buffer = this.buffer;
+                int end = ByteKernels.indexOfMember(buffer, position, limit, after);
+                for (int i = position; i < end; ) {
+                    if (length == token.length) {
+                        token = this.token = growToken(length);
+                    }
+                    int last = Math.min(end, i + token.length - length);
+                    while (i < last) {
+                        token[length++] = (char) buffer[i++];
+                    }
+                }
+                position = end;
+            }
+            nextChar();
+            c = currChar;
+        }
+        if (length > maxTokenLength) {
+            throw tokenTooLong();
+        }
+        tokenLength = length;
+        ++tokenCount;
+    }
+
+    /**
+     * Skips the characters from the given set.
+     * The runs of ASCII characters are skipped in the byte buffer, many bytes at once.
+     *
+     * @param set the characters to skip.
+     */
+    void skip(DelimiterSet set) {
+        int c = currChar;
+        while (c != EOF_CHAR && set.contains(c)) {
+            if (c < 0x80 && isAsciiCompatible) {
+                position = ByteKernels.indexOfNonMember(buffer, position, limit, set);
+            }
+            nextChar();
+            c = currChar;
+        }
+    }
+
+    /**
+     * Skips the characters which are not in the given set.
+     * The runs of ASCII characters are skipped in the byte buffer, many bytes at once.
+     *
+     * @param set the characters to stop at.
+     */
+    void skipNonMembers(DelimiterSet set) {
+        int c = currChar;
+        while (c != EOF_CHAR && !set.contains(c)) {
+            if (c < 0x80 && isAsciiCompatible) {
+                position = ByteKernels.indexOfMember(buffer, position, limit, set);
+            }
+            nextChar();
+            c = currChar;
+        }
+    }
+
+    /**
+     * Tries to read the next integer token, delimited by spaces, tabs and line breaks,
+     * directly from the byte buffer, without copying it into the token buffer.
+     * This succeeds if the token consists of ASCII characters, is followed by a delimiter within the buffer,
+     * and is a valid integer within the given bounds, in which case the integer is stored to {@link #parsedInteger}.
+     * Otherwise, the stream is left at the beginning of the token, so that the general parsing can be done.
+     *
+     * @param minValue the minimum allowed value.
+     * @param maxValue the maximum allowed value.
+     * @return whether the integer was read.
+     */
+    private boolean parseIntegerInBuffer(long minValue, long maxValue) {
+        skip(DelimiterSet.DEFAULT);
+        if (!isAsciiCompatible) {
+            return false;
+        }
+        byte[] buffer = this.buffer;
+        int limit = this.limit;
+        int index = position;
+        int c = currChar;
+        boolean negative = c == '-';
+        if (negative || c == '+') {
+            if (index == limit) {
+                return false;
+            }
+            c = buffer[index++];
+        }
+        int digit = c - '0';
+        if (digit < 0 || digit > 9) {
+            return false;
+        }
+        // The value is accumulated negatively, as in parseInteger.
+        long valueLimit = negative ? minValue : -maxValue;
+        long multiplyLimit = valueLimit / 10;
+        long result = -digit;
+        // Up to sixteen more digits are parsed in blocks of eight, which cannot overflow, and are checked afterwards.
+        for (int blocks = 0; blocks < 2 && limit - index >= 8; ++blocks) {
+            int digits = ByteKernels.parseEightDigits(buffer, index);
+            if (digits < 0) {
+                break;
+            }
+            result = result * 100_000_000 - digits;
+            index += 8;
+        }
+        if (result < valueLimit) {
+            return false;
+        }
+        while (true) {
+            if (index == limit) {
+                return false;
+            }
+            c = buffer[index];
+            digit = c - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (result < multiplyLimit) {
+                return false;
+            }
+            result *= 10;
+            if (result < valueLimit + digit) {
+                return false;
+            }
+            result -= digit;
+            ++index;
+        }
+        if (!isDefaultDelimiter(c) || index - position + 1 > maxTokenLength) {
+            return false;
+        }
+        currChar = c;
+        position = index + 1;
+        parsedInteger = negative ? result : -result;
+        ++tokenCount;
+        return true;
+    }
+
+    /**
+     * Finds the next token, delimited by spaces, tabs and line breaks, directly in the byte buffer.
+     * This succeeds if the token consists of ASCII characters, starts at the byte of the current character
+     * and is followed by a delimiter within the buffer, in which case the token occupies the bytes
+     * from {@code position - 1} to the returned index, exclusively. The stream is left at the beginning of the token.
+     *
+     * @return the index of the delimiter after the token, or -1 if the token cannot be found in the buffer.
+     */
+    private int findTokenInBuffer() {
+        skip(DelimiterSet.DEFAULT);
+        // The byte before the position is the current character, unless it was decoded before the buffer was refilled.
+        if (!isAsciiCompatible || position == 0 || buffer[position - 1] != currChar) {
+            return -1;
+        }
+        byte[] buffer = this.buffer;
+        int limit = this.limit;
+        for (int index = position; ; ++index) {
+            // The delimiters and the non-ASCII bytes are below or equal to the space when signed.
+            index = ByteKernels.indexOfSpaceOrBelow(buffer, index, limit);
+            if (index == limit) {
+                return -1;
+            }
+            byte c = buffer[index];
+            if (isDefaultDelimiter(c)) {
+                // Too long tokens are left to the general parsing, which reports them.
+                return index - position + 1 > maxTokenLength ? -1 : index;
+            }
+            if (c < 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Skips the token found by {@link #findTokenInBuffer()}, so that the delimiter after it becomes the current character.
+     *
+     * @param end the index of the delimiter after the token.
+     */
+    private void skipTokenInBuffer(int end) {
+        currChar = buffer[end];
+        position = end + 1;
+        ++tokenCount;
+    }
+
+    /**
+     * Grows the token buffer, which is full, unless the token is too long.
+     */
+    private char[] growToken(int length) {
+        if (length >= maxTokenLength) {
+            throw tokenTooLong();
+        }
+        return Arrays.copyOf(token, (int) Math.min(2L * length, Math.min(maxTokenLength, Integer.MAX_VALUE - 8)));
+    }
+
+    private Outcome tokenTooLong() {
+        throw quit(Outcome.Type.PE, "A token is too long: more than %d characters", maxTokenLength);
+    }
+
+    private String tokenString() {
+        return new String(token, 0, tokenLength);
+    }
+
+    private static boolean isDefaultDelimiter(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /**
+     * Parses a decimal integer in the same way {@link Long#parseLong(String)} does,
+     * but checks the result against the given bounds.
+     *
+     * @param s the characters to parse.
+     * @param length the number of characters to parse.
+     * @param minValue the minimum allowed value.
+     * @param maxValue the maximum allowed value.
+     * @return the parsed value.
+     * @throws NumberFormatException if the characters do not form an integer within the bounds.
+     */
+    static long parseInteger(char[] s, int length, long minValue, long maxValue) {
+        if (length == 0) {
+            throw new NumberFormatException();
+        }
+        int i = 0;
+        boolean negative = false;
+        char first = s[0];
+        if (first < '0') {
+            if (first == '-') {
+                negative = true;
+            } else if (first != '+') {
+                throw new NumberFormatException();
+            }
+            if (length == 1) {
+                throw new NumberFormatException();
+            }
+            i = 1;
+        }
+        // The value is accumulated negatively, as in Long.parseLong, to reach the minimum value.
+        long limit = negative ? minValue : -maxValue;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; i < length; ++i) {
+            int digit = s[i] - '0';
+            if (digit < 0 || digit > 9) {
+                digit = Character.digit(s[i], 10);
+                if (digit < 0) {
+                    throw new NumberFormatException();
+                }
+            }
+            if (result < multiplyLimit) {
+                throw new NumberFormatException();
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException();
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    static String shortenIfTooLong(String expected) {
+        if (expected.length() <= 64) return expected;
+        return expected.substring(0, 32) + "..." + expected.substring(expected.length() - 32);
+    }
+}
@@ -0,0 +1,111 @@
+package ru.ifmo.testlib;
+
+/**
+ * The byte-level kernels of the reading hot paths: scanning for whitespace and delimiters,
+ * parsing digits and comparing blocks.
+ *
+ * This is the baseline implementation, which runs on Java 8. The multi-release jar contains another implementation
+ * of this class for Java 17 and later, in {@code META-INF/versions/17}, which uses {@code VarHandle} views
+ * of byte arrays and {@code Arrays.mismatch}. Both implementations shall behave exactly the same.
+ *
+ * @author Maxim Buzdalov
+ */
+final class ByteKernels {
+    private ByteKernels() {}
+
+    /** The name of the implementation, which is either {@code "java8"} or {@code "java17"}. */
+    static final String VARIANT = "java8";
+
+    /**
+     * Finds the first byte which is a space, a control character or a non-ASCII byte,
+     * that is, which is less than or equal to the space when signed.
+     *
+     * @param bytes the bytes to scan.
+     * @param from the index to start from, inclusively.
+     * @param to the index to stop at, exclusively.
+     * @return the index of the first such byte, or {@code to} if there are none.
+     */
+    static int indexOfSpaceOrBelow(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (bytes[i] <= ' ') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Finds the first byte which is an ASCII character in the given set, or a non-ASCII byte.
+     *
+     * @param bytes the bytes to scan.
+     * @param from the index to start from, inclusively.
+     * @param to the index to stop at, exclusively.
+     * @param set the set of characters.
+     * @return the index of the first such byte, or {@code to} if there are none.
+     */
+    static int indexOfMember(byte[] bytes, int from, int to, DelimiterSet set) {
+        for (int i = from; i < to; ++i) {
+            byte b = bytes[i];
+            if (b < 0 || set.containsAscii(b)) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Finds the first byte which is not an ASCII character in the given set, that is, a non-member or a non-ASCII byte.
+     *
+     * @param bytes the bytes to scan.
+     * @param from the index to start from, inclusively.
+     * @param to the index to stop at, exclusively.
+     * @param set the set of characters.
+     * @return the index of the first such byte, or {@code to} if there are none.
+     */
+    static int indexOfNonMember(byte[] bytes, int from, int to, DelimiterSet set) {
+        for (int i = from; i < to; ++i) {
+            if (!set.containsAscii(bytes[i])) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Parses eight decimal digits.
+     *
+     * @param bytes the bytes to parse.
+     * @param index the index of the first digit, such that there are at least eight bytes starting from it.
+     * @return the value of the digits, or -1 if some of the bytes are not digits.
+     */
+    static int parseEightDigits(byte[] bytes, int index) {
+        int result = 0;
+        for (int i = 0; i < 8; ++i) {
+            int digit = bytes[index + i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the first mismatch of the two ranges of bytes of the same length.
+     *
+     * @param a the first array.
+     * @param aFrom the index of the range in the first array.
+     * @param b the second array.
+     * @param bFrom the index of the range in the second array.
+     * @param length the length of the ranges.
+     * @return the relative index of the first mismatch, or -1 if the ranges are the same.
+     */
+    static int mismatch(byte[] a, int aFrom, byte[] b, int bFrom, int length) {
+        for (int i = 0; i < length; ++i) {
+            if (a[aFrom + i] != b[bFrom + i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
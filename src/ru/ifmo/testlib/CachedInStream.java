@@ -0,0 +1,380 @@
+package ru.ifmo.testlib;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * An implementation of the {@link InStream} interface which reads tokens from a {@link TokenCache}.
+ *
+ * Reading tokens, integers and doubles does not parse the file, but walks the memory-mapped token records instead.
+ * The values and the errors are exactly the same as {@link FileInStream} would produce.
+ * As soon as a method which is not token-based is called, such as {@link #nextChar()} or {@link #nextLine()},
+ * the stream switches to a {@link FileInStream} positioned after the last token read, and uses it until reset.
+ *
+ * @author Maxim Buzdalov
+ */
+class CachedInStream implements InStream, MeasuredStream {
+    /** A file to read data from. */
+    private final File file;
+
+    /** The charset of the file. */
+    private final Charset charset;
+
+    /** The outcome mapping to be used for this stream. */
+    private final Map<Outcome.Type, Outcome.Type> outcomeMapping;
+
+    /** The token records. */
+    private final ByteBuffer records;
+
+    /** The number of tokens. */
+    private final int tokenCount;
+
+    /** The size of the file. */
+    private final long size;
+
+    /** The contents of the file, mapped when first needed. */
+    private ByteBuffer contents;
+
+    /** The index of the next token to read. */
+    private int nextToken;
+
+    /** The byte offset of the current character of the equivalent text stream. */
+    private long offset;
+
+    /** The text stream which is used after a method which is not token-based has been called. */
+    private AbstractInStream text;
+
+    /** The number of tokens read before the last reset. */
+    private long tokensBeforeReset;
+
+    /** The bytes of the last token read by {@link #nextTokenView()}. */
+    private byte[] tokenBytes = new byte[64];
+
+    /** The view of the last token read by {@link #nextTokenView()}. */
+    private final Token tokenView = new Token();
+
+    /** The index of the tokens and the lines, or {@code null} if it is not created yet. */
+    private TokenIndex index;
+
+    /**
+     * Creates a new stream for the given file and its token records.
+     *
+     * @param file the file.
+     * @param charset the charset of the file.
+     * @param records the token records obtained by {@link TokenCache#open(File, Charset)}.
+     * @param outcomeMapping the outcome mapping.
+     */
+    CachedInStream(File file, Charset charset, ByteBuffer records, Map<Outcome.Type, Outcome.Type> outcomeMapping) {
+        this.file = file;
+        this.charset = charset;
+        this.records = records;
+        this.outcomeMapping = outcomeMapping;
+        this.tokenCount = records.capacity() / TokenCache.RECORD_SIZE;
+        this.size = file.length();
+    }
+
+    public int nextChar() {
+        return text().nextChar();
+    }
+
+    public int currChar() {
+        if (text != null) {
+            return text.currChar();
+        }
+        return offset == size ? EOF_CHAR : contents().get((int) offset);
+    }
+
+    public boolean isEoF() {
+        return text != null ? text.isEoF() : offset == size;
+    }
+
+    public boolean isEoLn() {
+        int currChar = currChar();
+        return currChar == EOF_CHAR || currChar == '\r' || currChar == '\n';
+    }
+
+    public boolean seekEoF() {
+        if (text != null) {
+            return text.seekEoF();
+        }
+        if (nextToken == tokenCount) {
+            offset = size;
+            return true;
+        }
+        offset = records.getLong(nextToken * TokenCache.RECORD_SIZE);
+        return false;
+    }
+
+    public boolean seekEoLn() {
+        return text().seekEoLn();
+    }
+
+    public void skipLine() {
+        text().skipLine();
+    }
+
+    public void skip(String skip) {
+        text().skip(skip);
+    }
+
+    public void reset() {
+        tokensBeforeReset = tokensConsumed();
+        if (text != null) {
+            text.close();
+            text = null;
+        }
+        nextToken = 0;
+        offset = 0;
+    }
+
+    public long position() {
+        return text != null ? text.position() : offset;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The token which starts at or after the position is found by binary search over the token records.
+     * If the position is inside a token, the stream switches to the text stream, as the methods which are not
+     * token-based do.
+     */
+    public void seek(long position) {
+        if (position < 0) {
+            throw new IllegalArgumentException("The position is negative: " + position);
+        }
+        long consumed = tokensConsumed();
+        position = Math.min(position, size);
+        int left = 0, right = tokenCount;
+        while (left < right) {
+            int middle = (left + right) >>> 1;
+            if (records.getLong(middle * TokenCache.RECORD_SIZE) < position) {
+                left = middle + 1;
+            } else {
+                right = middle;
+            }
+        }
+        boolean isInsideToken = left > 0 && records.getLong((left - 1) * TokenCache.RECORD_SIZE)
+                + records.getInt((left - 1) * TokenCache.RECORD_SIZE + 8) > position;
+        nextToken = left;
+        offset = position;
+        if (isInsideToken) {
+            if (text != null) {
+                text.seek(position);
+            } else {
+                text();
+            }
+        } else if (text != null) {
+            text.close();
+            text = null;
+        }
+        // The tokens read so far remain counted.
+        tokensBeforeReset = consumed - nextToken - (text != null ? text.tokensConsumed() : 0);
+    }
+
+    public long bytesConsumed() {
+        return text != null ? text.bytesConsumed() : offset;
+    }
+
+    public long tokensConsumed() {
+        return tokensBeforeReset + nextToken + (text != null ? text.tokensConsumed() : 0);
+    }
+
+    public void close() {
+        if (text != null) {
+            text.close();
+        }
+        if (index != null) {
+            index.close();
+        }
+    }
+
+    public TokenIndex tokenIndex() {
+        if (index == null) {
+            index = new TokenIndex(this, new FileInStream(file, charset, outcomeMapping));
+        }
+        return index;
+    }
+
+    public String nextToken(String before, String after) {
+        return text().nextToken(before, after);
+    }
+
+    public String nextToken(String skip) {
+        return text().nextToken(skip);
+    }
+
+    public String nextToken() {
+        if (text != null) {
+            return text.nextToken();
+        }
+        return tokenString(advance());
+    }
+
+    public Token nextTokenView() {
+        if (text != null) {
+            return text.nextTokenView();
+        }
+        int record = advance();
+        int length = records.getInt(record + 8);
+        if (tokenBytes.length < length) {
+            tokenBytes = new byte[Math.max(length, 2 * tokenBytes.length)];
+        }
+        ByteBuffer contents = contents();
+        contents.position((int) records.getLong(record));
+        contents.get(tokenBytes, 0, length);
+        tokenView.set(tokenBytes, 0, length);
+        return tokenView;
+    }
+
+    public int nextInt() {
+        if (text != null) {
+            return text.nextInt();
+        }
+        int record = advance();
+        long value = records.getLong(record + 16);
+        if ((records.getInt(record + 12) & TokenCache.IS_LONG) != 0
+                && Integer.MIN_VALUE <= value && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        throw quit(Outcome.Type.PE, "A 32-bit signed integer expected, %s found",
+                AbstractInStream.shortenIfTooLong(tokenString(record)));
+    }
+
+    public long nextLong() {
+        if (text != null) {
+            return text.nextLong();
+        }
+        int record = advance();
+        if ((records.getInt(record + 12) & TokenCache.IS_LONG) != 0) {
+            return records.getLong(record + 16);
+        }
+        throw quit(Outcome.Type.PE, "A 64-bit signed integer expected, %s found",
+                AbstractInStream.shortenIfTooLong(tokenString(record)));
+    }
+
+    public BigInteger nextBigInteger() {
+        String word = nextToken();
+        try {
+            return DecimalIntegers.parse(word);
+        } catch (NumberFormatException ex) {
+            throw quit(Outcome.Type.PE, "An integer expected, %s found", AbstractInStream.shortenIfTooLong(word));
+        }
+    }
+
+    public float nextFloat() {
+        String word = nextToken();
+        try {
+            return Float.parseFloat(word);
+        } catch (NumberFormatException ex) {
+            throw quit(Outcome.Type.PE, "A float number expected, %s found", AbstractInStream.shortenIfTooLong(word));
+        }
+    }
+
+    public double nextDouble() {
+        if (text != null) {
+            return text.nextDouble();
+        }
+        int record = advance();
+        int flags = records.getInt(record + 12);
+        long value = records.getLong(record + 16);
+        if ((flags & TokenCache.IS_DOUBLE) != 0) {
+            return Double.longBitsToDouble(value);
+        }
+        if ((flags & TokenCache.IS_DOUBLE_AS_LONG) != 0) {
+            return value;
+        }
+        // Either not a double at all, or a rare case like "-0", where the double differs from the long.
+        String word = tokenString(record);
+        try {
+            double v = Double.parseDouble(word);
+            if (Double.isInfinite(v) || Double.isNaN(v)) {
+                throw new NumberFormatException(word);
+            }
+            return v;
+        } catch (NumberFormatException ex) {
+            throw quit(Outcome.Type.PE, "A double number expected, %s found", AbstractInStream.shortenIfTooLong(word));
+        }
+    }
+
+    @Override
+    public long matchWords(InStream other) {
+        if (text != null || nextToken != 0) {
+            reset();
+            other.reset();
+            return -1;
+        }
+        // Comparing the bytes is faster than walking the records, and the cached files are ASCII anyway.
+        long count = text().matchWords(other);
+        if (count < 0) {
+            reset();
+        }
+        return count;
+    }
+
+    public String nextLine() {
+        return text().nextLine();
+    }
+
+    public void setOutcomeMapping(Outcome.Type from, Outcome.Type to) {
+        outcomeMapping.put(from, to);
+    }
+
+    public Outcome quit(Outcome.Type type, String message) {
+        throw new Outcome(outcomeMapping.getOrDefault(type, type), message);
+    }
+
+    @Override
+    public Outcome quit(Outcome.Type type, String formatString, Object... arguments) {
+        throw new Outcome(outcomeMapping.getOrDefault(type, type), formatString, arguments);
+    }
+
+    /**
+     * Moves to the next token, in the same way the text stream would do.
+     *
+     * @return the byte index of the token record.
+     * @throws Outcome if there are no more tokens.
+     */
+    private int advance() {
+        if (nextToken == tokenCount) {
+            offset = size;
+            throw quit(Outcome.Type.PE, "Unexpected end of file");
+        }
+        int record = nextToken++ * TokenCache.RECORD_SIZE;
+        offset = records.getLong(record) + records.getInt(record + 8);
+        return record;
+    }
+
+    private String tokenString(int record) {
+        byte[] bytes = new byte[records.getInt(record + 8)];
+        ByteBuffer contents = contents();
+        contents.position((int) records.getLong(record));
+        contents.get(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private ByteBuffer contents() {
+        if (contents == null) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                contents = size == 0 ? ByteBuffer.allocate(0) : raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException ex) {
+                throw quit(Outcome.Type.PE, "File not found: " + ex);
+            }
+        }
+        return contents;
+    }
+
+    private AbstractInStream text() {
+        if (text == null) {
+            text = new FileInStream(file, charset, outcomeMapping);
+            text.seek(offset);
+        }
+        return text;
+    }
+}
@@ -0,0 +1,162 @@
+package ru.ifmo.testlib;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The metrics of a single check: the times spent opening the streams, inside {@link Checker#test},
+ * and looking for the extra output, the bytes and tokens consumed from each stream, the bytes allocated
+ * by the checking thread, and the outcome.
+ *
+ * The metrics are appended to a file as a single line of JSON, for instance:
+ * <pre>
+ * {"checker":"Check","outcome":"OK","openNanos":1200000,"testNanos":3400000,"seekEoFNanos":1000,"allocatedBytes":65536,
+ *  "input":{"file":"input.txt","size":10,"bytes":10,"tokens":2},"output":{...},"answer":{...}}
+ * </pre>
+ * The times of the phases which have not been reached, as well as the allocated bytes
+ * if the JVM cannot measure them, are -1. Lines of concurrent checks never interleave.
+ *
+ * @author Maxim Buzdalov
+ */
+final class CheckMetrics {
+    private static final String[] STREAM_NAMES = { "input", "output", "answer" };
+
+    private final String checkerName;
+    private final String[] fileNames;
+    private final MeasuredStream[] streams = new MeasuredStream[3];
+    private final long startNanos;
+    private final long startAllocatedBytes;
+    private long openNanos = -1, testNanos = -1, seekEoFNanos = -1;
+    private long lastNanos;
+
+    /**
+     * Starts measuring a check.
+     *
+     * @param checker the checker.
+     * @param inputFile the input file name.
+     * @param outputFile the output file name.
+     * @param answerFile the answer file name.
+     */
+    CheckMetrics(Checker checker, String inputFile, String outputFile, String answerFile) {
+        this.checkerName = checker.getClass().getName();
+        this.fileNames = new String[] { inputFile, outputFile, answerFile };
+        this.startAllocatedBytes = allocatedBytes();
+        this.startNanos = lastNanos = System.nanoTime();
+    }
+
+    /**
+     * Records that the streams have been opened.
+     */
+    void streamsOpened(InStream input, InStream output, InStream answer) {
+        InStream[] opened = { input, output, answer };
+        for (int i = 0; i < opened.length; ++i) {
+            if (opened[i] instanceof MeasuredStream) {
+                streams[i] = (MeasuredStream) opened[i];
+            }
+        }
+        openNanos = lap();
+    }
+
+    /**
+     * Records that {@link Checker#test} has returned or thrown.
+     */
+    void testFinished() {
+        testNanos = lap();
+    }
+
+    /**
+     * Records that the output has been checked for extra information.
+     */
+    void seekEoFFinished() {
+        seekEoFNanos = lap();
+    }
+
+    /**
+     * Appends the metrics to the given file. Failures are reported to the standard error and otherwise ignored,
+     * since the metrics shall never affect the outcome.
+     *
+     * @param fileName the name of the file to append to.
+     * @param outcome the outcome of the check.
+     */
+    void write(String fileName, Outcome outcome) {
+        StringBuilder line = new StringBuilder(256);
+        line.append("{\"checker\":");
+        appendString(line, checkerName);
+        line.append(",\"outcome\":");
+        appendString(line, outcome.getType().name());
+        line.append(",\"totalNanos\":").append(System.nanoTime() - startNanos);
+        line.append(",\"openNanos\":").append(openNanos);
+        line.append(",\"testNanos\":").append(testNanos);
+        line.append(",\"seekEoFNanos\":").append(seekEoFNanos);
+        long allocatedBytes = allocatedBytes();
+        line.append(",\"allocatedBytes\":").append(allocatedBytes < 0 ? -1 : allocatedBytes - startAllocatedBytes);
+        for (int i = 0; i < STREAM_NAMES.length; ++i) {
+            line.append(",\"").append(STREAM_NAMES[i]).append("\":{\"file\":");
+            appendString(line, fileNames[i]);
+            line.append(",\"size\":").append(new File(fileNames[i]).length());
+            line.append(",\"bytes\":").append(streams[i] == null ? -1 : streams[i].bytesConsumed());
+            line.append(",\"tokens\":").append(streams[i] == null ? -1 : streams[i].tokensConsumed());
+            line.append('}');
+        }
+        line.append("}\n");
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+        synchronized (CheckMetrics.class) {
+            // A single write in the append mode, so that the lines of concurrent processes do not interleave either.
+            try (OutputStream out = new FileOutputStream(fileName, true)) {
+                out.write(bytes);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private long lap() {
+        long now = System.nanoTime();
+        long result = now - lastNanos;
+        lastNanos = now;
+        return result;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread, or -1 if the JVM cannot tell.
+     */
+    private static long allocatedBytes() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+                }
+            }
+        } catch (LinkageError | RuntimeException ex) {
+            // Not a HotSpot-based JVM, or the management is not available.
+        }
+        return -1;
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': line.append("\\\""); break;
+                case '\\': line.append("\\\\"); break;
+                case '\n': line.append("\\n"); break;
+                case '\r': line.append("\\r"); break;
+                case '\t': line.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -1,22 +1,36 @@
 package ru.ifmo.testlib;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.AccessControlException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
 import static ru.ifmo.testlib.Outcome.Type.*;
-import ru.ifmo.testlib.verifiers.EJudgeResultAdapter;
-import ru.ifmo.testlib.verifiers.IFMOResultAdapter;
-import ru.ifmo.testlib.verifiers.KittenResultAdapter;
 
 /**
  * This is the checker framework, which is the entry point for all checkers.
@@ -29,22 +43,50 @@ import ru.ifmo.testlib.verifiers.KittenResultAdapter;
 public class CheckerFramework {
     private static final String DEFAULT_RESULT_ADAPTER = "checker-type:ifmo";
     private static final String CHECKER_CLASS_ENTRY = "Checker-Class";
+    private static final String CHECKER_CLASS_PROPERTY = "testlib.checker";
     private static final String EXPECTED_EXIT_CODE_PROPERTY = "testlib.expected.exitcode";
+    private static final String CHARSET_PROPERTY = "testlib.charset";
+    private static final String MAPPED_PROPERTY = "testlib.mapped";
+    private static final String MAPPED_THRESHOLD_PROPERTY = "testlib.mapped.threshold";
+    private static final long DEFAULT_MAPPED_THRESHOLD = 32L << 20;
+    private static final String READ_AHEAD_PROPERTY = "testlib.readahead";
+    private static final String DECOMPRESS_PROPERTY = "testlib.decompress";
+    private static final String ANSWER_CACHE_PROPERTY = "testlib.answer.cache";
+    private static final String METRICS_PROPERTY = "testlib.metrics";
+    private static final String MAX_TOKEN_PROPERTY = "testlib.max.token";
+    private static final String MAX_LINE_PROPERTY = "testlib.max.line";
+    private static final String MAX_BYTES_PROPERTY = "testlib.max.bytes";
+    private static final String MAX_OUTPUT_RATIO_PROPERTY = "testlib.max.output.ratio";
+    private static final long OUTPUT_RATIO_SLACK = 1L << 20;
     private static final String SYS_EXIT_DISABLED = "System.exit(int) did not exit. Exiting abnormally.";
+    private static final String DAEMON_MODE_ARG = "--daemon";
+    private static final String BATCH_MODE_ARG = "--batch";
     private static final String USAGE =
             "Usage: [<verifier_classname>] <input_file> <output_file> <answer_file> [<result_file> [<test_system_args>]].\n" +
-            "    The <verifier_classname> value may also be specified in MANIFEST.MF as Checker-Class attribute.";
+            "    The <verifier_classname> value may also be specified in MANIFEST.MF as Checker-Class attribute,\n" +
+            "    or by the testlib.checker system property, which is faster to look up.\n" +
+            "   or: --daemon [<verifier_classname>]\n" +
+            "    Reads jobs from the standard input, one per line, and writes a response line for each job.\n" +
+            "    The job line consists of tab-separated fields:\n" +
+            "        <verifier_classname> <input_file> <output_file> <answer_file> [<result_file> [<checker_type> [<test_system_args>]]],\n" +
+            "    where the empty <verifier_classname>, <result_file> or <checker_type> means the default one.\n" +
+            "    The response line consists of tab-separated fields: <exit_code> <outcome_type> <message>,\n" +
+            "    where tabs, line breaks and backslashes in the message are escaped as in Java.\n" +
+            "   or: --batch <jobs_file> [<verifier_classname>]\n" +
+            "    Runs the jobs from <jobs_file>, which has the same format as in the daemon mode, concurrently.\n" +
+            "    Prints the response lines in the order of the jobs, followed by the summary line.";
 
-    private static final HashMap<String, ResultAdapter> resultAdapters = new HashMap<>();
+    // Result adapters are registered by class names, so that only the one which is used gets loaded.
+    private static final HashMap<String, String> resultAdapters = new HashMap<>();
 
-    private static void registerResultAdapter(String id, ResultAdapter v) {
-        resultAdapters.put(id, v);
+    private static void registerResultAdapter(String id, String className) {
+        resultAdapters.put(id, className);
     }
 
     static {
-        registerResultAdapter("checker-type:ifmo", new IFMOResultAdapter());
-        registerResultAdapter("checker-type:kitten", new KittenResultAdapter());
-        registerResultAdapter("checker-type:ejudge", new EJudgeResultAdapter());
+        registerResultAdapter("checker-type:ifmo", "ru.ifmo.testlib.verifiers.IFMOResultAdapter");
+        registerResultAdapter("checker-type:kitten", "ru.ifmo.testlib.verifiers.KittenResultAdapter");
+        registerResultAdapter("checker-type:ejudge", "ru.ifmo.testlib.verifiers.EJudgeResultAdapter");
     }
 
     private static void printUsageAndExit() {
@@ -58,6 +100,18 @@ public class CheckerFramework {
         System.exit(3);
     }
 
+    /**
+     * Finds the checker class name, which is given either by the {@code testlib.checker} property,
+     * or by the {@code Checker-Class} attribute of a manifest on the class path.
+     * The property is checked first, since scanning the manifests takes noticeable time at startup.
+     *
+     * @return the checker class name, or {@code null} if none is found.
+     */
+    private static String findCheckerClassName() {
+        String checkerClass = System.getProperty(CHECKER_CLASS_PROPERTY);
+        return checkerClass != null ? checkerClass : findCheckerInManifest();
+    }
+
     private static String findCheckerInManifest() {
         try {
             Enumeration<URL> resources = CheckerFramework.class.getClassLoader().getResources("META-INF/MANIFEST.MF");
@@ -76,13 +130,26 @@ public class CheckerFramework {
     }
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(DAEMON_MODE_ARG)) {
+            runDaemon(args.length > 1 ? args[1] : findCheckerClassName());
+            return;
+        }
+        if (args.length > 0 && args[0].equals(BATCH_MODE_ARG)) {
+            if (args.length < 2) {
+                printUsageAndExit();
+                throw new RuntimeException(SYS_EXIT_DISABLED);
+            }
+            runBatch(args[1], args.length > 2 ? args[2] : findCheckerClassName());
+            return;
+        }
+
         int delta = 0;
         if (args.length < 3 + delta) {
             printUsageAndExit();
             throw new RuntimeException(SYS_EXIT_DISABLED);
         }
 
-        String checkerClassName = findCheckerInManifest();
+        String checkerClassName = findCheckerClassName();
         if (checkerClassName == null) {
             checkerClassName = args[0];
         }
@@ -121,6 +188,338 @@ public class CheckerFramework {
         }
     }
 
+    /**
+     * Opens the given file as an {@link InStream}.
+     *
+     * The file is decoded with the charset given by the {@code testlib.charset} property, which is UTF-8 by default.
+     * The memory-mapped implementation is chosen if the {@code testlib.mapped} property is {@code true},
+     * or if this property is not set and the file is at least {@code testlib.mapped.threshold} bytes long.
+     * If the {@code testlib.readahead} property is {@code true}, the file is read ahead in a background thread,
+     * and the memory-mapped implementation is chosen only if it is requested explicitly.
+     * Jury's files compressed with gzip or zlib are decompressed on the fly in a background thread,
+     * unless the {@code testlib.decompress} property is {@code false}.
+     * If the token cache is requested, and the file is neither compressed nor unsuitable for caching,
+     * the tokens are read from the cache, see {@link TokenCache}, which is created if needed.
+     *
+     * @param file the file to open.
+     * @param isJuryFile whether the file is the input or the answer file, and not the contestant's output.
+     * @param useTokenCache whether to use the token cache.
+     * @param outcomeMapping the outcome mapping for the stream.
+     * @return the newly opened stream.
+     */
+    private static InStream openStream(File file, boolean isJuryFile, boolean useTokenCache,
+                                       Map<Outcome.Type, Outcome.Type> outcomeMapping) {
+        Object event = Events.beginStreamOpen();
+        InStream stream = createStream(file, isJuryFile, useTokenCache, outcomeMapping);
+        Events.endStreamOpen(event, file, stream);
+        return stream;
+    }
+
+    private static InStream createStream(File file, boolean isJuryFile, boolean useTokenCache,
+                                         Map<Outcome.Type, Outcome.Type> outcomeMapping) {
+        Charset charset = Charset.forName(System.getProperty(CHARSET_PROPERTY, "UTF-8"));
+        String mapped = System.getProperty(MAPPED_PROPERTY);
+        boolean readAhead = Boolean.getBoolean(READ_AHEAD_PROPERTY);
+        boolean decompress = isJuryFile && isDecompressionEnabled();
+        boolean isCompressed = decompress && CompressedInput.isCompressed(file);
+        if (useTokenCache && !isCompressed) {
+            ByteBuffer records = TokenCache.open(file, charset);
+            if (records != null) {
+                return new CachedInStream(file, charset, records, outcomeMapping);
+            }
+        }
+        boolean useMapped;
+        if (isCompressed) {
+            useMapped = false;
+        } else if (mapped != null) {
+            useMapped = Boolean.parseBoolean(mapped);
+        } else if (readAhead) {
+            useMapped = false;
+        } else {
+            long threshold = Long.getLong(MAPPED_THRESHOLD_PROPERTY, DEFAULT_MAPPED_THRESHOLD);
+            useMapped = file.length() >= threshold;
+        }
+        if (useMapped) {
+            return new MappedFileInStream(file, charset, outcomeMapping);
+        } else {
+            return new FileInStream(file, charset, readAhead, decompress, outcomeMapping);
+        }
+    }
+
+    private static boolean isDecompressionEnabled() {
+        return Boolean.parseBoolean(System.getProperty(DECOMPRESS_PROPERTY, "true"));
+    }
+
+    /**
+     * Opens the contestant's output, limited as given by the {@code testlib.max.token}, {@code testlib.max.line}
+     * and {@code testlib.max.bytes} properties, see {@link AbstractInStream#setLimits(long, long, long)}.
+     * If the {@code testlib.max.output.ratio} property is set, the number of bytes is also limited
+     * by this ratio times the size of the answer file plus one megabyte.
+     * This bound is not applied if the answer file is decompressed, as its size is not known in advance.
+     *
+     * @param file the output file.
+     * @param answerFile the answer file.
+     * @return the newly opened stream.
+     */
+    private static InStream openOutput(File file, File answerFile) {
+        InStream stream = openStream(file, false, false, Collections.emptyMap());
+        if (stream instanceof AbstractInStream) {
+            long maxBytes = Long.getLong(MAX_BYTES_PROPERTY, Long.MAX_VALUE);
+            String ratio = System.getProperty(MAX_OUTPUT_RATIO_PROPERTY);
+            if (ratio != null && !(isDecompressionEnabled() && CompressedInput.isCompressed(answerFile))) {
+                double ratioBound = Double.parseDouble(ratio) * answerFile.length() + OUTPUT_RATIO_SLACK;
+                if (ratioBound < maxBytes) {
+                    maxBytes = (long) ratioBound;
+                }
+            }
+            ((AbstractInStream) stream).setLimits(
+                    Long.getLong(MAX_TOKEN_PROPERTY, Long.MAX_VALUE),
+                    Long.getLong(MAX_LINE_PROPERTY, Long.MAX_VALUE),
+                    maxBytes);
+        }
+        return stream;
+    }
+
+    /**
+     * Creates a new result adapter of the given type.
+     * A new instance is created every time, since result adapters keep the arguments they are initialized with.
+     *
+     * @param verifierType the type of the result adapter, or {@code null} for the default one.
+     * @return the new result adapter, or {@code null} if there is no such type.
+     */
+    private static ResultAdapter createResultAdapter(String verifierType) {
+        if (verifierType == null) {
+            verifierType = DEFAULT_RESULT_ADAPTER;
+        }
+        if (verifierType.indexOf(':') == -1) {
+            verifierType = "checker-type:" + verifierType;
+        }
+        String resultAdapterClassName = resultAdapters.get(verifierType);
+        if (resultAdapterClassName == null) {
+            return null;
+        }
+        try {
+            return Class.forName(resultAdapterClassName).asSubclass(ResultAdapter.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Runs the checker on the given files and returns the outcome.
+     * Whatever happens inside the checker, this method neither exits nor throws.
+     * If the {@code testlib.metrics} property is set, the metrics of the check are appended
+     * to the file it names, see {@link CheckMetrics}.
+     *
+     * @param checker the checker to run.
+     * @param inputFile the input file name.
+     * @param outputFile the output file name.
+     * @param answerFile the answer file name.
+     * @return the outcome.
+     */
+    static Outcome check(Checker checker, String inputFile, String outputFile, String answerFile) {
+        Outcome outcome;
+        boolean useAnswerCache = Boolean.getBoolean(ANSWER_CACHE_PROPERTY);
+        String metricsFile = System.getProperty(METRICS_PROPERTY);
+        CheckMetrics metrics = metricsFile == null ? null : new CheckMetrics(checker, inputFile, outputFile, answerFile);
+        try (InStream input = openStream(new File(inputFile), true, false, Outcome.nonOkayIsFail);
+             InStream output = openOutput(new File(outputFile), new File(answerFile));
+             InStream answer = openStream(new File(answerFile), true, useAnswerCache, Outcome.nonOkayIsFail)) {
+            if (metrics != null) {
+                metrics.streamsOpened(input, output, answer);
+            }
+            Object event = Events.beginCheckerTest();
+            try {
+                outcome = checker.test(input, output, answer);
+            } catch (Outcome out) {
+                Events.outcomeThrown(out);
+                outcome = out;
+            }
+            Events.endCheckerTest(event, checker, outcome);
+            // The comment is formatted lazily, so the format string is checked here, where the errors are caught.
+            outcome.getComment();
+            if (metrics != null) {
+                metrics.testFinished();
+            }
+
+            if (outcome.getType() == OK && !output.seekEoF()) {
+                outcome = new Outcome(PE, "Extra information in output file");
+            }
+            if (metrics != null) {
+                metrics.seekEoFFinished();
+            }
+        } catch (Outcome out) {
+            Events.outcomeThrown(out);
+            outcome = out;
+        } catch (Throwable th) {
+            th.printStackTrace();
+            outcome = new Outcome(FAIL, th.toString());
+        }
+        if (metrics != null) {
+            metrics.write(metricsFile, outcome);
+        }
+        return outcome;
+    }
+
+    /**
+     * Runs the jobs read from the standard input until it is exhausted, see {@link #USAGE} for the protocol.
+     *
+     * @param defaultCheckerClassName the checker class name for jobs which do not specify one.
+     */
+    private static void runDaemon(String defaultCheckerClassName) {
+        try (BufferedReader jobs = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+             PrintWriter responses = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            String job;
+            while ((job = jobs.readLine()) != null) {
+                if (!job.isEmpty()) {
+                    responses.println(runJob(job, defaultCheckerClassName));
+                    responses.flush();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fatal(e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a single job of the daemon or batch mode and returns its result.
+     *
+     * @param job the job line.
+     * @param defaultCheckerClassName the checker class name to use if the job does not specify one.
+     * @return the result of the job.
+     */
+    private static JobResult runJob(String job, String defaultCheckerClassName) {
+        String[] fields = job.split("\t", -1);
+        if (fields.length < 4) {
+            return new JobResult(3, FAIL, "Expected at least four tab-separated fields, found " + fields.length);
+        }
+        String checkerClassName = fields[0].isEmpty() ? defaultCheckerClassName : fields[0];
+        if (checkerClassName == null) {
+            return new JobResult(3, FAIL, "No checker class name is given");
+        }
+        String verifierType = fields.length > 5 && !fields[5].isEmpty() ? fields[5] : System.getProperty("checker-type");
+        ResultAdapter resultAdapter = createResultAdapter(verifierType);
+        if (resultAdapter == null) {
+            return new JobResult(1, FAIL, "No result adapter found (checker-type = \"" + verifierType + "\")");
+        }
+
+        Checker checker;
+        try {
+            checker = (Checker) Class.forName(checkerClassName.replace('/', '.')).getDeclaredConstructor().newInstance();
+        } catch (InvocationTargetException e) {
+            e.getCause().printStackTrace();
+            return new JobResult(3, FAIL, e.getCause().toString());
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+            e.printStackTrace();
+            return new JobResult(3, FAIL, e.toString());
+        }
+
+        Outcome outcome = check(checker, fields[1], fields[2], fields[3]);
+
+        boolean hasResultFile = fields.length > 4 && !fields[4].isEmpty();
+        String[] verifierArgs = fields.length > 6 ? Arrays.copyOfRange(fields, 6, fields.length) : new String[0];
+        StringWriter console = new StringWriter();
+        try (PrintWriter result = hasResultFile ? new PrintWriter(fields[4], "utf-8") : new PrintWriter(console)) {
+            resultAdapter.initArgs(verifierArgs);
+            Object event = Events.beginResultWrite();
+            resultAdapter.printMessage(outcome, result, !hasResultFile);
+            Events.endResultWrite(event, resultAdapter, outcome);
+            int exitCode = resultAdapter.getExitCodeFor(outcome);
+            String message = hasResultFile ? outcome.getComment() : console.toString().trim();
+            return new JobResult(exitCode, outcome.getType(), message);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return new JobResult(3, FAIL, e.toString());
+        }
+    }
+
+    /**
+     * Runs the jobs from the given file concurrently, see {@link #USAGE} for the format,
+     * and prints the response lines in the order of the jobs, followed by the summary line.
+     * Exits with code 3 if any of the jobs has failed, and returns normally otherwise.
+     *
+     * @param jobsFile the name of the file containing the jobs.
+     * @param defaultCheckerClassName the checker class name for jobs which do not specify one.
+     */
+    private static void runBatch(String jobsFile, String defaultCheckerClassName) {
+        List<Callable<JobResult>> jobs = new ArrayList<>();
+        try {
+            for (String job : Files.readAllLines(Paths.get(jobsFile), StandardCharsets.UTF_8)) {
+                if (!job.isEmpty()) {
+                    jobs.add(() -> runJob(job, defaultCheckerClassName));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fatal(e.getMessage());
+            throw new RuntimeException(SYS_EXIT_DISABLED);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        EnumMap<Outcome.Type, Integer> counts = new EnumMap<>(Outcome.Type.class);
+        for (Outcome.Type type : Outcome.Type.values()) {
+            counts.put(type, 0);
+        }
+        try (PrintWriter responses = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            for (Future<JobResult> response : pool.invokeAll(jobs)) {
+                JobResult result = response.get();
+                counts.put(result.type, counts.get(result.type) + 1);
+                responses.println(result);
+            }
+            responses.print("Total: " + jobs.size());
+            for (Outcome.Type type : Outcome.Type.values()) {
+                responses.print(", " + type + ": " + counts.get(type));
+            }
+            responses.println();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            fatal(e.getMessage());
+            throw new RuntimeException(SYS_EXIT_DISABLED);
+        } finally {
+            pool.shutdown();
+        }
+        if (counts.get(FAIL) > 0) {
+            System.exit(3);
+        }
+    }
+
+    /**
+     * A result of a job in the daemon or batch mode.
+     */
+    private static class JobResult {
+        private final int exitCode;
+        private final Outcome.Type type;
+        private final String message;
+
+        private JobResult(int exitCode, Outcome.Type type, String message) {
+            this.exitCode = exitCode;
+            this.type = type;
+            this.message = message;
+        }
+
+        /**
+         * Returns the response line for this result.
+         *
+         * @return the response line.
+         */
+        @Override
+        public String toString() {
+            StringBuilder response = new StringBuilder().append(exitCode).append('\t').append(type).append('\t');
+            for (int i = 0, length = message == null ? 0 : message.length(); i < length; ++i) {
+                char c = message.charAt(i);
+                switch (c) {
+                    case '\t': response.append("\\t"); break;
+                    case '\n': response.append("\\n"); break;
+                    case '\r': response.append("\\r"); break;
+                    case '\\': response.append("\\\\"); break;
+                    default: response.append(c);
+                }
+            }
+            return response.toString();
+        }
+    }
+
     private static void run(String[] args, int delta, Checker checker) {
         PrintWriter result;
         boolean shallCloseResult = true;
@@ -144,14 +543,7 @@ public class CheckerFramework {
         }
 
         String verifierType = System.getProperty("checker-type");
-        if (verifierType == null) {
-            verifierType = DEFAULT_RESULT_ADAPTER;
-        }
-        if (verifierType.indexOf(':') == -1) {
-            verifierType = "checker-type:" + verifierType;
-        }
-
-        ResultAdapter resultAdapter = resultAdapters.get(verifierType);
+        ResultAdapter resultAdapter = createResultAdapter(verifierType);
 
         if (resultAdapter == null) {
             System.err.println("No result adapter found (property checker-type = \"" + verifierType + "\")");
@@ -161,32 +553,16 @@ public class CheckerFramework {
 
         resultAdapter.initArgs(verifierArgs);
 
-        Outcome outcome;
-        try (InStream input = new FileInStream(new File(args[delta]), Outcome.nonOkayIsFail);
-             InStream output = new FileInStream(new File(args[1 + delta]), Collections.emptyMap());
-             InStream answer = new FileInStream(new File(args[2 + delta]), Outcome.nonOkayIsFail)) {
-            try {
-                outcome = checker.test(input, output, answer);
-            } catch (Outcome out) {
-                outcome = out;
-            }
-
-            if (outcome.getType() == OK && !output.seekEoF()) {
-                outcome = new Outcome(PE, "Extra information in output file");
-            }
-        } catch (Outcome out) {
-            outcome = out;
-        } catch (Throwable th) {
-            th.printStackTrace();
-            outcome = new Outcome(FAIL, th.toString());
-        }
+        Outcome outcome = check(checker, args[delta], args[1 + delta], args[2 + delta]);
 
+        Object event = Events.beginResultWrite();
         resultAdapter.printMessage(outcome, result, args.length <= 4);
         if (shallCloseResult) {
             result.close();
         } else {
             result.flush();
         }
+        Events.endResultWrite(event, resultAdapter, outcome);
 
         int theExitCode = resultAdapter.getExitCodeFor(outcome);
         try {
@@ -0,0 +1,100 @@
+package ru.ifmo.testlib;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Detection and decompression of compressed files, which are recognized by their first two bytes.
+ *
+ * Two formats are supported: gzip, and zlib (deflate with the zlib header).
+ * A zlib header is recognized only if its second byte is not a printable ASCII character,
+ * so that text files starting with, say, {@code "x "} are never mistaken for compressed ones.
+ * This rules out zlib streams compressed with the levels from 2 to 5, whose header is {@code "x^"}.
+ *
+ * @author Maxim Buzdalov
+ */
+final class CompressedInput {
+    private CompressedInput() {}
+
+    /** The size of the buffers of the decompressing streams. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Checks whether the file is compressed in one of the supported formats.
+     *
+     * @param file the file to check.
+     * @return {@code true} if the file is compressed, {@code false} if it is not, or if it cannot be read.
+     */
+    static boolean isCompressed(File file) {
+        try (InputStream stream = new FileInputStream(file)) {
+            byte[] header = new byte[2];
+            return isCompressed(header, readHeader(stream, header));
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a stream which decompresses the given stream if it is compressed in one of the supported formats,
+     * or which returns the same bytes as the given stream otherwise.
+     * The decompressing stream is not buffered ahead, which is up to the caller.
+     *
+     * @param stream the stream to decompress.
+     * @return the decompressing stream.
+     * @throws IOException if reading fails.
+     */
+    static InputStream decompress(InputStream stream) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(stream, 2);
+        byte[] header = new byte[2];
+        int length = readHeader(pushback, header);
+        pushback.unread(header, 0, length);
+        if (!isCompressed(header, length)) {
+            return pushback;
+        }
+        if (header[0] == (byte) 0x1F) {
+            return new GZIPInputStream(pushback, BUFFER_SIZE);
+        }
+        Inflater inflater = new Inflater();
+        return new InflaterInputStream(pushback, inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                // An explicitly given inflater is not released by InflaterInputStream.close().
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+    }
+
+    private static boolean isCompressed(byte[] header, int length) {
+        if (length < 2) {
+            return false;
+        }
+        int first = header[0] & 0xFF, second = header[1] & 0xFF;
+        if (first == 0x1F && second == 0x8B) {
+            return true;
+        }
+        // The deflate method with a window of 32K, a valid checksum, no preset dictionary, and not a text-like header.
+        return first == 0x78 && (first << 8 | second) % 31 == 0 && (second & 0x20) == 0 && (second < 0x20 || second >= 0x7F);
+    }
+
+    private static int readHeader(InputStream stream, byte[] header) throws IOException {
+        int length = 0;
+        while (length < header.length) {
+            int read = stream.read(header, length, header.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,154 @@
+package ru.ifmo.testlib;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Operations on decimal integers given as character sequences, such as tokens, which are efficient for long numbers.
+ *
+ * {@link #parse(CharSequence)} converts a sequence to a {@link BigInteger} by divide and conquer:
+ * the digits are split into the high and the low parts, which are parsed recursively and combined
+ * as {@code high * 10^k + low}, where the powers of ten are cached. With the subquadratic multiplication
+ * of {@link BigInteger}, this is much faster than {@link BigInteger#BigInteger(String)},
+ * which takes quadratic time, for numbers with many thousands of digits.
+ *
+ * {@link #compare(CharSequence, CharSequence)} compares two integers without converting them at all,
+ * by their signs and their digits with the leading zeros skipped.
+ *
+ * @author Maxim Buzdalov
+ */
+public final class DecimalIntegers {
+    private DecimalIntegers() {}
+
+    /** The number of digits which are parsed directly, and the length of the low part at the lowest level. */
+    private static final int BASE_DIGITS = 512;
+
+    /** The powers of ten: the power with the index {@code i} is {@code 10^(BASE_DIGITS * 2^i)}. */
+    private static final List<BigInteger> POWERS_OF_TEN = new ArrayList<>();
+
+    /**
+     * Parses the decimal integer in the same way as {@link BigInteger#BigInteger(String)} does,
+     * that is, an optional sign followed by one or more digits.
+     *
+     * @param number the integer to parse.
+     * @return the parsed integer.
+     * @throws NumberFormatException if the sequence is not a valid integer.
+     */
+    public static BigInteger parse(CharSequence number) {
+        int length = number.length();
+        int from = length > 0 && (number.charAt(0) == '-' || number.charAt(0) == '+') ? 1 : 0;
+        if (length - from <= BASE_DIGITS || !isAsciiDigits(number, from, length)) {
+            // Either too short to split, or has characters which BigInteger handles in its own way.
+            return new BigInteger(number.toString());
+        }
+        BigInteger magnitude = parseDigits(number, from, length, new char[BASE_DIGITS]);
+        return number.charAt(0) == '-' ? magnitude.negate() : magnitude;
+    }
+
+    /**
+     * Compares two decimal integers, each of which is an optional sign followed by one or more ASCII digits,
+     * without converting them into numbers.
+     *
+     * @param a the first integer.
+     * @param b the second integer.
+     * @return a negative number, zero or a positive number if the first integer is less than,
+     *         equal to, or greater than the second integer, respectively.
+     * @throws NumberFormatException if either of the sequences is not a valid integer.
+     */
+    public static int compare(CharSequence a, CharSequence b) {
+        int aFrom = significantDigitsStart(a), bFrom = significantDigitsStart(b);
+        int aSign = sign(a, aFrom), bSign = sign(b, bFrom);
+        if (aSign != bSign) {
+            return Integer.compare(aSign, bSign);
+        }
+        int aLength = a.length() - aFrom, bLength = b.length() - bFrom;
+        int result;
+        if (aLength != bLength) {
+            result = Integer.compare(aLength, bLength);
+        } else {
+            result = 0;
+            for (int i = 0; i < aLength && result == 0; ++i) {
+                result = Character.compare(a.charAt(aFrom + i), b.charAt(bFrom + i));
+            }
+        }
+        return aSign < 0 ? -result : result;
+    }
+
+    /**
+     * Checks whether the sequence is a valid decimal integer, that is, an optional sign followed by one or more ASCII digits.
+     *
+     * @param number the sequence to check.
+     * @return {@code true} if the sequence is a valid integer, {@code false} otherwise.
+     */
+    public static boolean isValid(CharSequence number) {
+        int length = number.length();
+        int from = length > 0 && (number.charAt(0) == '-' || number.charAt(0) == '+') ? 1 : 0;
+        return from < length && isAsciiDigits(number, from, length);
+    }
+
+    private static BigInteger parseDigits(CharSequence number, int from, int until, char[] chunk) {
+        int length = until - from;
+        if (length <= BASE_DIGITS) {
+            for (int i = 0; i < length; ++i) {
+                chunk[i] = number.charAt(from + i);
+            }
+            return new BigInteger(new String(chunk, 0, length));
+        }
+        // The low part is the longest of the cached lengths which is shorter than the number.
+        int level = 0;
+        while ((long) BASE_DIGITS << (level + 1) < length) {
+            ++level;
+        }
+        int middle = until - (BASE_DIGITS << level);
+        BigInteger high = parseDigits(number, from, middle, chunk);
+        BigInteger low = parseDigits(number, middle, until, chunk);
+        return high.multiply(powerOfTen(level)).add(low);
+    }
+
+    private static BigInteger powerOfTen(int level) {
+        synchronized (POWERS_OF_TEN) {
+            if (POWERS_OF_TEN.isEmpty()) {
+                POWERS_OF_TEN.add(BigInteger.TEN.pow(BASE_DIGITS));
+            }
+            while (POWERS_OF_TEN.size() <= level) {
+                BigInteger last = POWERS_OF_TEN.get(POWERS_OF_TEN.size() - 1);
+                POWERS_OF_TEN.add(last.multiply(last));
+            }
+            return POWERS_OF_TEN.get(level);
+        }
+    }
+
+    private static boolean isAsciiDigits(CharSequence number, int from, int until) {
+        for (int i = from; i < until; ++i) {
+            char c = number.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Validates the integer and returns the index of its first significant digit,
+     * or its length if the integer is zero.
+     */
+    private static int significantDigitsStart(CharSequence number) {
+        if (!isValid(number)) {
+            throw new NumberFormatException("Not a decimal integer: " + AbstractInStream.shortenIfTooLong(number.toString()));
+        }
+        int length = number.length();
+        int index = number.charAt(0) == '-' || number.charAt(0) == '+' ? 1 : 0;
+        while (index < length && number.charAt(index) == '0') {
+            ++index;
+        }
+        return index;
+    }
+
+    private static int sign(CharSequence number, int significantDigitsStart) {
+        if (significantDigitsStart == number.length()) {
+            return 0;
+        }
+        return number.charAt(0) == '-' ? -1 : 1;
+    }
+}
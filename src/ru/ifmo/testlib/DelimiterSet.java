@@ -0,0 +1,118 @@
+package ru.ifmo.testlib;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A set of characters which delimit tokens or are skipped, compiled for scanning many bytes at once.
+ *
+ * The ASCII members are stored as a 128-bit table, as well as a short list of ranges, which {@link ByteKernels}
+ * may use to test eight bytes at once. The non-ASCII members are tested one character at a time,
+ * since the scanning stops at non-ASCII bytes anyway, which are then decoded.
+ *
+ * @author Maxim Buzdalov
+ */
+final class DelimiterSet {
+    /** The maximum number of ranges of ASCII members which are tested at once, eight bytes at a time. */
+    private static final int MAX_RANGES = 4;
+
+    /** The characters for which {@link Character#isWhitespace(int)} is true. */
+    static final DelimiterSet WHITESPACE = new DelimiterSet(Character::isWhitespace);
+
+    /** The whitespace characters except for the line breaks. */
+    static final DelimiterSet WHITESPACE_IN_LINE = new DelimiterSet(c -> c != '\r' && c != '\n' && Character.isWhitespace(c));
+
+    /** The default delimiters of tokens: spaces, tabs and line breaks. */
+    static final DelimiterSet DEFAULT = new DelimiterSet(c -> c == ' ' || c == '\n' || c == '\r' || c == '\t');
+
+    /** The recently compiled sets given by strings, which are usually constants, indexed by their identity hash codes. */
+    private static final DelimiterSet[] cache = new DelimiterSet[16];
+
+    /** The string the set is compiled from, or {@code null} if the set is given by a predicate. */
+    private final String chars;
+
+    /** The membership test for all characters. */
+    private final IntPredicate contains;
+
+    /** The table of ASCII members: the characters from 0 to 63 are in the low word, and the rest in the high word. */
+    private final long low, high;
+
+    /**
+     * The ranges of ASCII members, as pairs of addends to the seven low bits of a byte:
+     * the first one sets the high bit if the byte is at least the lower bound of the range,
+     * the second one sets the high bit if the byte is greater than the upper bound of the range.
+     * This is {@code null} if there are too many ranges.
+     */
+    final int[] rangeAddends;
+
+    private DelimiterSet(IntPredicate contains) {
+        this(null, contains);
+    }
+
+    private DelimiterSet(String chars, IntPredicate contains) {
+        this.chars = chars;
+        this.contains = contains;
+        long low = 0, high = 0;
+        int[] addends = new int[2 * MAX_RANGES];
+        int ranges = 0;
+        for (int c = 0; c < 128; ++c) {
+            if (contains.test(c)) {
+                if (c < 64) {
+                    low |= 1L << c;
+                } else {
+                    high |= 1L << c;
+                }
+                if (c == 0 || !contains.test(c - 1)) {
+                    if (ranges == MAX_RANGES) {
+                        ranges = -1;
+                    } else if (ranges >= 0) {
+                        addends[2 * ranges] = 0x80 - c;
+                        ++ranges;
+                    }
+                }
+                if (ranges > 0 && (c == 127 || !contains.test(c + 1))) {
+                    addends[2 * ranges - 1] = 0x7F - c;
+                }
+            }
+        }
+        this.low = low;
+        this.high = high;
+        this.rangeAddends = ranges < 0 ? null : Arrays.copyOf(addends, 2 * ranges);
+    }
+
+    /**
+     * Returns the set of the characters of the given string.
+     *
+     * @param chars the characters.
+     * @return the compiled set.
+     */
+    static DelimiterSet of(String chars) {
+        int index = System.identityHashCode(chars) & (cache.length - 1);
+        DelimiterSet result = cache[index];
+        if (result == null || !chars.equals(result.chars)) {
+            result = new DelimiterSet(chars, c -> chars.indexOf((char) c) >= 0);
+            cache[index] = result;
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the given character is in the set.
+     *
+     * @param c the character, which is not {@link InStream#EOF_CHAR}.
+     * @return {@code true} if the character is in the set, {@code false} otherwise.
+     */
+    boolean contains(int c) {
+        return c < 128 ? containsAscii(c) : contains.test(c);
+    }
+
+    /**
+     * Checks whether the given byte is an ASCII character in the set.
+     *
+     * @param b the byte, which is negative for non-ASCII bytes.
+     * @return {@code true} if the byte is an ASCII character in the set, {@code false} otherwise.
+     */
+    boolean containsAscii(int b) {
+        return b >= 0 && ((b < 64 ? low : high) >>> b & 1) != 0;
+    }
+}
@@ -0,0 +1,108 @@
+package ru.ifmo.testlib;
+
+import java.io.File;
+
+/**
+ * The events of the streams and the checks, which are emitted to Java Flight Recorder if the JVM has it,
+ * see {@link FlightRecorderEvents}, and ignored otherwise.
+ *
+ * Each timed event is started by a {@code begin} method, which returns a handle, and finished by the {@code end}
+ * method which takes this handle. The handle is {@code null} if the event is not recorded, which is the case
+ * if there is no recording or the event is disabled in it, so that the events cost next to nothing then.
+ * Until the first recording starts, not even the event classes are loaded.
+ * This class does not refer to the Flight Recorder classes itself, so it works on the JVMs which lack them.
+ *
+ * @author Maxim Buzdalov
+ */
+final class Events {
+    private Events() {}
+
+    /** Whether the JVM has Java Flight Recorder. */
+    private static final boolean IS_AVAILABLE = isAvailable();
+
+    static Object beginStreamOpen() {
+        return isRecording() ? FlightRecorderEvents.beginStreamOpen() : null;
+    }
+
+    static void endStreamOpen(Object event, File file, InStream stream) {
+        if (event != null) {
+            FlightRecorderEvents.endStreamOpen(event, file, stream);
+        }
+    }
+
+    static Object beginStreamClose() {
+        return isRecording() ? FlightRecorderEvents.beginStreamClose() : null;
+    }
+
+    static void endStreamClose(Object event, File file, MeasuredStream stream) {
+        if (event != null) {
+            FlightRecorderEvents.endStreamClose(event, file, stream);
+        }
+    }
+
+    static Object beginBufferRefill() {
+        return isRecording() ? FlightRecorderEvents.beginBufferRefill() : null;
+    }
+
+    /**
+     * Finishes the event of refilling the buffer of a stream.
+     *
+     * @param event the handle returned by {@link #beginBufferRefill()}.
+     * @param offset the offset of the bytes read in the source.
+     * @param bytes the number of bytes read.
+     * @param tokens the number of tokens read from the previous contents of the buffer.
+     */
+    static void endBufferRefill(Object event, long offset, long bytes, long tokens) {
+        if (event != null) {
+            FlightRecorderEvents.endBufferRefill(event, offset, bytes, tokens);
+        }
+    }
+
+    static Object beginCheckerTest() {
+        return isRecording() ? FlightRecorderEvents.beginCheckerTest() : null;
+    }
+
+    static void endCheckerTest(Object event, Checker checker, Outcome outcome) {
+        if (event != null) {
+            FlightRecorderEvents.endCheckerTest(event, checker, outcome);
+        }
+    }
+
+    /**
+     * Records that an outcome was thrown, rather than returned, by a checker or a stream.
+     *
+     * @param outcome the outcome.
+     */
+    static void outcomeThrown(Outcome outcome) {
+        if (isRecording()) {
+            FlightRecorderEvents.outcomeThrown(outcome);
+        }
+    }
+
+    static Object beginResultWrite() {
+        return isRecording() ? FlightRecorderEvents.beginResultWrite() : null;
+    }
+
+    static void endResultWrite(Object event, ResultAdapter resultAdapter, Outcome outcome) {
+        if (event != null) {
+            FlightRecorderEvents.endResultWrite(event, resultAdapter, outcome);
+        }
+    }
+
+    /**
+     * Checks whether Java Flight Recorder may be recording. Until it is initialized, which happens
+     * when the first recording starts, the event classes are not even loaded, which saves the startup time.
+     */
+    private static boolean isRecording() {
+        return IS_AVAILABLE && FlightRecorderEvents.isInitialized();
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, Events.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError | SecurityException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package ru.ifmo.testlib;
+
+import java.math.BigInteger;
+
+/**
+ * Correctly rounded parsing of decimal numbers from ASCII bytes, without creating intermediate objects.
+ *
+ * Only numbers of a form {@code [+-]digits[.digits][(e|E)[+-]digits]} with at most 19 significant digits
+ * (not counting trailing zeros) are parsed. The result is computed exactly in floating-point arithmetic
+ * if both the significand and the power of ten are exactly representable (the Clinger's fast path),
+ * and by the Eisel-Lemire algorithm otherwise, which in extremely rare cases cannot decide the result.
+ * In all the remaining cases, including infinite results, {@link Double#NaN} is returned,
+ * which means that the number shall be parsed by {@link Double#parseDouble(String)} or {@link Float#parseFloat(String)}.
+ *
+ * @author Maxim Buzdalov
+ */
+final class FastDoubleParser {
+    private FastDoubleParser() {}
+
+    /** The smallest power of ten in the table of powers of five. */
+    private static final int SMALLEST_POWER_OF_TEN = -342;
+
+    /** The largest power of ten in the table of powers of five. */
+    private static final int LARGEST_POWER_OF_TEN = 308;
+
+    /** Powers of ten which are exactly representable as {@code double}. */
+    private static final double[] EXACT_DOUBLE_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Powers of ten which are exactly representable as {@code float}. */
+    private static final float[] EXACT_FLOAT_POWERS_OF_TEN = {
+            1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    /** The value returned by {@link #eiselLemire} if it cannot decide the result. */
+    private static final long UNDECIDED = -1;
+
+    /**
+     * Parses a {@code double} from the given range of bytes.
+     *
+     * @param s the bytes.
+     * @param from the index of the first byte of the number.
+     * @param until the index after the last byte of the number.
+     * @return the parsed number, or {@link Double#NaN} if the number shall be parsed by {@link Double#parseDouble(String)}.
+     */
+    static double parseDouble(byte[] s, int from, int until) {
+        Decimal d = Decimal.parse(s, from, until);
+        if (d == null) {
+            return Double.NaN;
+        }
+        long w = d.significand;
+        int q = d.exponent;
+        double result;
+        if (w == 0) {
+            result = 0;
+        } else if (0 <= w && w <= 1L << 53 && -22 <= q && q <= 22) {
+            result = q < 0 ? w / EXACT_DOUBLE_POWERS_OF_TEN[-q] : w * EXACT_DOUBLE_POWERS_OF_TEN[q];
+        } else {
+            long bits = eiselLemire(w, q, 52, -1023, 0x7FF, -4, 23, -342, 308);
+            if (bits == UNDECIDED || bits == 0x7FFL << 52) {
+                return Double.NaN;
+            }
+            result = Double.longBitsToDouble(bits);
+        }
+        return d.negative ? -result : result;
+    }
+
+    /**
+     * Parses a {@code float} from the given range of bytes.
+     *
+     * @param s the bytes.
+     * @param from the index of the first byte of the number.
+     * @param until the index after the last byte of the number.
+     * @return the parsed number, or {@link Float#NaN} if the number shall be parsed by {@link Float#parseFloat(String)}.
+     */
+    static float parseFloat(byte[] s, int from, int until) {
+        Decimal d = Decimal.parse(s, from, until);
+        if (d == null) {
+            return Float.NaN;
+        }
+        long w = d.significand;
+        int q = d.exponent;
+        float result;
+        if (w == 0) {
+            result = 0;
+        } else if (0 <= w && w <= 1L << 24 && -10 <= q && q <= 10) {
+            result = q < 0 ? w / EXACT_FLOAT_POWERS_OF_TEN[-q] : w * EXACT_FLOAT_POWERS_OF_TEN[q];
+        } else {
+            long bits = eiselLemire(w, q, 23, -127, 0xFF, -17, 10, -64, 38);
+            if (bits == UNDECIDED || bits == 0xFFL << 23) {
+                return Float.NaN;
+            }
+            result = Float.intBitsToFloat((int) bits);
+        }
+        return d.negative ? -result : result;
+    }
+
+    /**
+     * A decimal number {@code significand * 10^exponent}, where the significand is an unsigned 64-bit number.
+     */
+    private static final class Decimal {
+        private final boolean negative;
+        private final long significand;
+        private final int exponent;
+
+        private Decimal(boolean negative, long significand, int exponent) {
+            this.negative = negative;
+            this.significand = significand;
+            this.exponent = exponent;
+        }
+
+        /**
+         * Parses a decimal number from the given range of bytes.
+         * The allocation of the result is eliminated after the calling code is compiled and inlined.
+         *
+         * @param s the bytes.
+         * @param from the index of the first byte of the number.
+         * @param until the index after the last byte of the number.
+         * @return the parsed number, or {@code null} if the number is not of the supported form.
+         */
+        private static Decimal parse(byte[] s, int from, int until) {
+            int i = from;
+            boolean negative = false;
+            if (i < until && (s[i] == '-' || s[i] == '+')) {
+                negative = s[i] == '-';
+                ++i;
+            }
+            long significand = 0;
+            int significantDigits = 0;
+            int anyDigits = 0;
+            int exponent = 0;
+            for (; i < until && s[i] >= '0' && s[i] <= '9'; ++i, ++anyDigits) {
+                if (significantDigits < 19) {
+                    significand = significand * 10 + (s[i] - '0');
+                    significantDigits += significand == 0 ? 0 : 1;
+                } else {
+                    ++exponent;
+                    if (s[i] != '0') {
+                        return null;
+                    }
+                }
+            }
+            if (i < until && s[i] == '.') {
+                for (++i; i < until && s[i] >= '0' && s[i] <= '9'; ++i, ++anyDigits) {
+                    if (significantDigits < 19) {
+                        significand = significand * 10 + (s[i] - '0');
+                        significantDigits += significand == 0 ? 0 : 1;
+                        --exponent;
+                    } else if (s[i] != '0') {
+                        return null;
+                    }
+                }
+            }
+            if (anyDigits == 0) {
+                return null;
+            }
+            if (i < until && (s[i] == 'e' || s[i] == 'E')) {
+                ++i;
+                boolean negativeExponent = false;
+                if (i < until && (s[i] == '-' || s[i] == '+')) {
+                    negativeExponent = s[i] == '-';
+                    ++i;
+                }
+                if (i == until) {
+                    return null;
+                }
+                int explicitExponent = 0;
+                for (; i < until && s[i] >= '0' && s[i] <= '9'; ++i) {
+                    explicitExponent = Math.min(explicitExponent * 10 + (s[i] - '0'), 1000000);
+                }
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
+            }
+            return i == until ? new Decimal(negative, significand, exponent) : null;
+        }
+    }
+
+    /**
+     * Computes the bits of the floating-point number nearest to {@code w * 10^q}, without the sign bit,
+     * using the Eisel-Lemire algorithm as implemented in the fast_float library.
+     *
+     * @param w the significand, treated as an unsigned number.
+     * @param q the power of ten.
+     * @param mantissaBits the number of explicit bits of the mantissa.
+     * @param minimumExponent the binary exponent bias, negated.
+     * @param infinitePower the biased exponent of infinity.
+     * @param minExponentRoundToEven the smallest power of ten for which the number can be exactly between two floats.
+     * @param maxExponentRoundToEven the largest power of ten for which the number can be exactly between two floats.
+     * @param smallestPowerOfTen the smallest power of ten for which the result may be non-zero.
+     * @param largestPowerOfTen the largest power of ten for which the result may be finite.
+     * @return the bits of the result, or {@link #UNDECIDED} if the algorithm cannot decide the result.
+     */
+    private static long eiselLemire(long w, int q, int mantissaBits, int minimumExponent, int infinitePower,
+                                    int minExponentRoundToEven, int maxExponentRoundToEven,
+                                    int smallestPowerOfTen, int largestPowerOfTen) {
+        if (q < smallestPowerOfTen) {
+            return 0;
+        }
+        if (q > largestPowerOfTen) {
+            return (long) infinitePower << mantissaBits;
+        }
+        int leadingZeros = Long.numberOfLeadingZeros(w);
+        w <<= leadingZeros;
+
+        long[] powers = PowersOfFive.TABLE;
+        int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+        long high = unsignedMultiplyHigh(w, powers[index]);
+        long low = w * powers[index];
+        long precisionMask = -1L >>> (mantissaBits + 3);
+        if ((high & precisionMask) == precisionMask) {
+            long secondHigh = unsignedMultiplyHigh(w, powers[index + 1]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0) {
+                ++high;
+            }
+        }
+        if (low == -1L && (q < -27 || q > 55)) {
+            return UNDECIDED;
+        }
+
+        int upperBit = (int) (high >>> 63);
+        int shift = upperBit + 64 - mantissaBits - 3;
+        long mantissa = high >>> shift;
+        int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - leadingZeros - minimumExponent;
+        if (power2 <= 0) {
+            // A subnormal number or zero.
+            if (-power2 + 1 >= 64) {
+                return 0;
+            }
+            mantissa >>>= -power2 + 1;
+            mantissa += mantissa & 1;
+            mantissa >>>= 1;
+            power2 = mantissa < 1L << mantissaBits ? 0 : 1;
+            return mantissa | (long) power2 << mantissaBits;
+        }
+        if (Long.compareUnsigned(low, 1) <= 0
+                && minExponentRoundToEven <= q && q <= maxExponentRoundToEven
+                && (mantissa & 3) == 1
+                && mantissa << shift == high) {
+            // Exactly between two floats, so we must not round up.
+            mantissa &= ~1L;
+        }
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= 2L << mantissaBits) {
+            mantissa = 1L << mantissaBits;
+            ++power2;
+        }
+        mantissa &= ~(1L << mantissaBits);
+        if (power2 >= infinitePower) {
+            return (long) infinitePower << mantissaBits;
+        }
+        return mantissa | (long) power2 << mantissaBits;
+    }
+
+    /**
+     * Returns the high 64 bits of the unsigned 128-bit product of two unsigned 64-bit numbers.
+     *
+     * @param a the first multiplier.
+     * @param b the second multiplier.
+     * @return the high 64 bits of the product.
+     */
+    private static long unsignedMultiplyHigh(long a, long b) {
+        long aLow = a & 0xFFFFFFFFL, aHigh = a >>> 32;
+        long bLow = b & 0xFFFFFFFFL, bHigh = b >>> 32;
+        long lowLow = aLow * bLow;
+        long highLow = aHigh * bLow;
+        long lowHigh = aLow * bHigh;
+        long middle = (lowLow >>> 32) + (highLow & 0xFFFFFFFFL) + (lowHigh & 0xFFFFFFFFL);
+        return aHigh * bHigh + (highLow >>> 32) + (lowHigh >>> 32) + (middle >>> 32);
+    }
+
+    /**
+     * The 128-bit approximations of powers of five, from {@link #SMALLEST_POWER_OF_TEN} to {@link #LARGEST_POWER_OF_TEN},
+     * normalized to have the highest bit set. Every power takes two elements, the high and the low 64 bits.
+     * The table is computed on first use, since the Clinger's fast path covers most of the numbers in practice.
+     */
+    private static final class PowersOfFive {
+        private static final long[] TABLE = compute();
+
+        private static long[] compute() {
+            long[] result = new long[2 * (LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1)];
+            BigInteger five = BigInteger.valueOf(5);
+            for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; ++q) {
+                BigInteger value;
+                if (q < 0) {
+                    BigInteger power = five.pow(-q);
+                    int z = power.bitLength();
+                    int b = q >= -27 ? z + 127 : 2 * z + 128;
+                    value = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+                } else {
+                    value = five.pow(q);
+                }
+                value = value.shiftLeft(128 - value.bitLength());
+                int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+                result[index] = value.shiftRight(64).longValue();
+                result[index + 1] = value.longValue();
+            }
+            return result;
+        }
+    }
+}
@@ -1,10 +1,12 @@
 package ru.ifmo.testlib;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.math.BigInteger;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 /**
@@ -15,205 +17,128 @@ import java.util.Map;
  * @author Dmitry Paraschenko
  * @author Sergey Melnikov
  */
-public class FileInStream implements InStream {
+public class FileInStream extends AbstractInStream {
     /** A file to read data from. */
     private final File file;
 
-    /** Current character. */
-    private int currChar;
+    /** Whether the file is read ahead in a background thread. */
+    private final boolean readAhead;
 
-    /** A reader used to read data. */
-    private BufferedReader reader;
+    /** Whether the file is compressed and is decompressed, see {@link CompressedInput}. */
+    private final boolean isCompressed;
 
-    /** The outcome mapping to be used for this stream. */
-    private final Map<Outcome.Type, Outcome.Type> outcomeMapping;
+    /** A stream used to read data. */
+    private InputStream stream;
+
+    /** The channel of the file, which is used to seek, or {@code null} if the file is decompressed. */
+    private FileChannel channel;
 
     /**
-     * Creates new {@link InStream} for specified file and with the specified outcome mapping.
+     * Creates new {@link InStream} for specified file, which is read as UTF-8, and with the specified outcome mapping.
      *
      * @param file a file to read data from
      */
     FileInStream(File file, Map<Outcome.Type, Outcome.Type> outcomeMapping) {
-        this.file = file;
-        this.outcomeMapping = outcomeMapping;
-        reset();
+        this(file, StandardCharsets.UTF_8, outcomeMapping);
     }
 
-    public void setOutcomeMapping(Outcome.Type from, Outcome.Type to) {
-        outcomeMapping.put(from, to);
+    /**
+     * Creates new {@link InStream} for specified file, charset and with the specified outcome mapping.
+     *
+     * @param file a file to read data from
+     * @param charset the charset of the file
+     */
+    FileInStream(File file, Charset charset, Map<Outcome.Type, Outcome.Type> outcomeMapping) {
+        this(file, charset, false, false, outcomeMapping);
     }
 
-    public void reset() {
+    /**
+     * Creates new {@link InStream} for specified file, charset and with the specified outcome mapping,
+     * which optionally reads the file ahead in a background thread and decompresses it.
+     * A compressed file is always decompressed in a background thread, so that the parser does not wait for inflation.
+     *
+     * @param file a file to read data from
+     * @param charset the charset of the file
+     * @param readAhead whether to read the file ahead in a background thread
+     * @param decompress whether to decompress the file if it is compressed
+     */
+    FileInStream(File file, Charset charset, boolean readAhead, boolean decompress,
+                 Map<Outcome.Type, Outcome.Type> outcomeMapping) {
+        super(charset, outcomeMapping);
+        this.file = file;
+        this.readAhead = readAhead;
+        this.isCompressed = decompress && CompressedInput.isCompressed(file);
         try {
-            if (reader != null) {
-                reader.close();
-            }
-            reader = new BufferedReader(new FileReader(file));
+            open(0);
         } catch (IOException ex) {
             // The output file might not exist, because the participant is "evil".
             throw quit(Outcome.Type.PE, "File not found: " + ex);
         }
-        nextChar();
-    }
-
-    public void close() {
-        try {
-            reader.close();
-        } catch (IOException ex) {
-            // Even if the participant is totally "evil", this must not happen
-            throw quit(Outcome.Type.FAIL, "Cannot close file: " + ex);
-        }
-    }
-
-    public int currChar() {
-        return currChar;
-    }
-
-    public boolean isEoF() {
-        return currChar == EOF_CHAR;
-    }
-
-    public boolean isEoLn() {
-        return isEoF() || currChar == '\r' || currChar == '\n';
-    }
-
-    public boolean seekEoF() {
-        while (!isEoF() && Character.isWhitespace(currChar)) {
-            nextChar();
-        }
-        return isEoF();
-    }
-
-    public boolean seekEoLn() {
-        while (!isEoLn() && Character.isWhitespace(currChar)) {
-            nextChar();
-        }
-        return isEoLn();
-    }
-
-    public void skipLine() {
-        while (!isEoLn()) {
-            nextChar();
-        }
-        if (currChar == '\r') nextChar();
-        if (currChar == '\n') nextChar();
-    }
-
-    public void skip(String skip) {
-        while (!isEoF() && skip.indexOf((char) currChar) >= 0) {
-            nextChar();
-        }
-    }
-
-    public String nextToken(String before, String after) {
-        while (!isEoF() && before.indexOf((char) currChar) >= 0) {
-            nextChar();
-        }
-        if (isEoF()) {
-            throw quit(Outcome.Type.PE, "Unexpected end of file");
-        }
-        StringBuilder builder = new StringBuilder();
-        while (!isEoF() && after.indexOf((char) currChar) < 0) {
-            builder.append((char) currChar);
-            nextChar();
-        }
-        return builder.toString();
-    }
-
-    public String nextToken(String skip) {
-        return nextToken(skip, skip);
-    }
-
-    public String nextToken() {
-        return nextToken(" \t\r\n");
+        startReading();
     }
 
-    public int nextInt() {
-        String word = nextToken();
-        try {
-            return Integer.parseInt(word);
-        } catch (NumberFormatException ex) {
-            throw quit(Outcome.Type.PE, "A 32-bit signed integer expected, %s found", shortenIfTooLong(word));
-        }
-    }
-
-    public long nextLong() {
-        String word = nextToken();
-        try {
-            return Long.parseLong(word);
-        } catch (NumberFormatException ex) {
-            throw quit(Outcome.Type.PE, "A 64-bit signed integer expected, %s found", shortenIfTooLong(word));
+    /**
+     * Opens the file, or reopens it if it is open, so that the next read returns the byte at the given offset.
+     *
+     * @param offset the offset, which is zero if the file is decompressed.
+     */
+    private void open(long offset) throws IOException {
+        if (stream != null) {
+            stream.close();
+        }
+        FileInputStream input = new FileInputStream(file);
+        stream = input;
+        if (isCompressed) {
+            channel = null;
+            stream = new ReadAheadInputStream(CompressedInput.decompress(input), file.getPath());
+        } else {
+            channel = input.getChannel();
+            channel.position(offset);
+            if (readAhead) {
+                stream = new ReadAheadInputStream(input, file.getPath());
+            }
         }
     }
 
-    public BigInteger nextBigInteger() {
-        String word = nextToken();
-        try {
-            return new BigInteger(word);
-        } catch (NumberFormatException ex) {
-            throw quit(Outcome.Type.PE, "An integer expected, %s found", shortenIfTooLong(word));
+    long seekSource(long offset, long current) throws IOException {
+        if (isCompressed) {
+            if (offset >= current) {
+                return current;
+            }
+            open(0);
+            return 0;
         }
-    }
-
-    public float nextFloat() {
-        String word = nextToken();
-        try {
-            return Float.parseFloat(word);
-        } catch (NumberFormatException ex) {
-            throw quit(Outcome.Type.PE, "A float number expected, %s found", shortenIfTooLong(word));
+        offset = Math.min(offset, channel.size());
+        if (readAhead) {
+            // The background thread has read beyond the current offset, so it is started anew.
+            open(offset);
+        } else {
+            channel.position(offset);
         }
+        return offset;
     }
 
-    public double nextDouble() {
-        String word = nextToken();
-        try {
-            double v = Double.parseDouble(word);
-            if (Double.isInfinite(v) || Double.isNaN(v)) {
-                throw new NumberFormatException(word);
-            }
-            return v;
-        } catch (NumberFormatException ex) {
-            throw quit(Outcome.Type.PE, "A double number expected, %s found", shortenIfTooLong(word));
-        }
+    boolean isSeekable() {
+        return !isCompressed;
     }
 
-    public String nextLine() {
-        StringBuilder sb = new StringBuilder();
-        while (!isEoLn()) {
-            sb.append((char) (currChar));
-            nextChar();
-        }
-        if (currChar == '\r') nextChar();
-        if (currChar == '\n') nextChar();
-
-        return sb.toString();
+    AbstractInStream openAnother() {
+        return new FileInStream(file, charset, false, isCompressed, outcomeMapping);
     }
 
-    public int nextChar() {
+    public void close() {
+        closeIndex();
+        Object event = Events.beginStreamClose();
         try {
-            int result = currChar;
-            currChar = reader.read();
-            return result;
+            stream.close();
         } catch (IOException ex) {
-            throw quit(Outcome.Type.PE, ex.getMessage());
+            // Even if the participant is totally "evil", this must not happen
+            throw quit(Outcome.Type.FAIL, "Cannot close file: " + ex);
         }
+        Events.endStreamClose(event, file, this);
     }
 
-    /**
-     * Throws a new outcome with the given type and message,
-     * where the type is adjusted in order to match the semantics of this particular stream.
-     *
-     * @param type the type of the outcome.
-     * @param message the message to be specified in the outcome.
-     * @return the newly created outcome (actually it is thrown, but you can safely say {@code return quit(...)}.
-     * @throws Outcome the newly created outcome.
-     */
-    public Outcome quit(Outcome.Type type, String message) {
-        throw new Outcome(outcomeMapping.getOrDefault(type, type), message);
-    }
-
-    static private String shortenIfTooLong(String expected) {
-        if (expected.length() <= 64) return expected;
-        return expected.substring(0, 32) + "..." + expected.substring(expected.length() - 32);
+    int read(byte[] buffer, int offset, int length) throws IOException {
+        return stream.read(buffer, offset, length);
     }
 }
@@ -0,0 +1,209 @@
+package ru.ifmo.testlib;
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events, which are emitted through {@link Events}.
+ * This class is loaded only if the JVM has Java Flight Recorder.
+ *
+ * To record the events, run the checker with {@code -XX:StartFlightRecording=filename=checker.jfr},
+ * and find them in the {@code testlib} category of the recording.
+ *
+ * @author Maxim Buzdalov
+ */
+final class FlightRecorderEvents {
+    private FlightRecorderEvents() {}
+
+    static boolean isInitialized() {
+        return FlightRecorder.isInitialized();
+    }
+
+    private static Object begin(Event event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static Object beginStreamOpen() {
+        return begin(new StreamOpen());
+    }
+
+    static void endStreamOpen(Object handle, File file, InStream stream) {
+        StreamOpen event = (StreamOpen) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file.getPath();
+            event.size = file.length();
+            event.implementation = stream.getClass().getSimpleName();
+            event.commit();
+        }
+    }
+
+    static Object beginStreamClose() {
+        return begin(new StreamClose());
+    }
+
+    static void endStreamClose(Object handle, File file, MeasuredStream stream) {
+        StreamClose event = (StreamClose) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file.getPath();
+            event.bytes = stream.bytesConsumed();
+            event.tokens = stream.tokensConsumed();
+            event.commit();
+        }
+    }
+
+    static Object beginBufferRefill() {
+        return begin(new BufferRefill());
+    }
+
+    static void endBufferRefill(Object handle, long offset, long bytes, long tokens) {
+        BufferRefill event = (BufferRefill) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.offset = offset;
+            event.bytes = bytes;
+            event.tokens = tokens;
+            event.commit();
+        }
+    }
+
+    static Object beginCheckerTest() {
+        return begin(new CheckerTest());
+    }
+
+    static void endCheckerTest(Object handle, Checker checker, Outcome outcome) {
+        CheckerTest event = (CheckerTest) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.checker = checker.getClass().getName();
+            event.outcome = outcome.getType().name();
+            event.commit();
+        }
+    }
+
+    static void outcomeThrown(Outcome outcome) {
+        OutcomeThrown event = new OutcomeThrown();
+        if (event.shouldCommit()) {
+            event.outcome = outcome.getType().name();
+            event.comment = outcome.getComment();
+            event.commit();
+        }
+    }
+
+    static Object beginResultWrite() {
+        return begin(new ResultWrite());
+    }
+
+    static void endResultWrite(Object handle, ResultAdapter resultAdapter, Outcome outcome) {
+        ResultWrite event = (ResultWrite) handle;
+        event.end();
+        if (event.shouldCommit()) {
+            event.resultAdapter = resultAdapter.getClass().getName();
+            event.outcome = outcome.getType().name();
+            event.commit();
+        }
+    }
+
+    @Name("ru.ifmo.testlib.StreamOpen")
+    @Label("Stream Open")
+    @Description("Opening of an input, output or answer file")
+    @Category("testlib")
+    @StackTrace(false)
+    static class StreamOpen extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        @Label("Implementation")
+        String implementation;
+    }
+
+    @Name("ru.ifmo.testlib.StreamClose")
+    @Label("Stream Close")
+    @Description("Closing of a file, with the amount of data read from it")
+    @Category("testlib")
+    @StackTrace(false)
+    static class StreamClose extends Event {
+        @Label("File")
+        String file;
+
+        @Label("Bytes Consumed")
+        @DataAmount
+        long bytes;
+
+        @Label("Tokens Read")
+        long tokens;
+    }
+
+    @Name("ru.ifmo.testlib.BufferRefill")
+    @Label("Buffer Refill")
+    @Description("Reading of a block of a file into the buffer of a stream, "
+            + "with the number of tokens read from the previous block")
+    @Category("testlib")
+    @StackTrace(false)
+    static class BufferRefill extends Event {
+        @Label("Offset")
+        long offset;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+
+        @Label("Tokens Read")
+        long tokens;
+    }
+
+    @Name("ru.ifmo.testlib.CheckerTest")
+    @Label("Checker Test")
+    @Description("Execution of Checker.test")
+    @Category("testlib")
+    @StackTrace(false)
+    static class CheckerTest extends Event {
+        @Label("Checker")
+        String checker;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("ru.ifmo.testlib.OutcomeThrown")
+    @Label("Outcome Thrown")
+    @Description("An outcome thrown by a checker or a stream")
+    @Category("testlib")
+    static class OutcomeThrown extends Event {
+        @Label("Outcome")
+        String outcome;
+
+        @Label("Comment")
+        String comment;
+    }
+
+    @Name("ru.ifmo.testlib.ResultWrite")
+    @Label("Result Write")
+    @Description("Writing of the outcome by a result adapter")
+    @Category("testlib")
+    @StackTrace(false)
+    static class ResultWrite extends Event {
+        @Label("Result Adapter")
+        String resultAdapter;
+
+        @Label("Outcome")
+        String outcome;
+    }
+}
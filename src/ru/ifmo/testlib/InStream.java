@@ -2,6 +2,7 @@ package ru.ifmo.testlib;
 
 import java.io.Closeable;
 import java.math.BigInteger;
+import java.util.Arrays;
 
 /**
  * An interface for reading input files.
@@ -76,10 +77,63 @@ public interface InStream extends Closeable {
     void skip(String skip);
 
     /**
-     * Resets the stream.
+     * Resets the stream, so that it is read from the beginning again. The streams which read files
+     * do this in the same way as {@code seek(0)} does, so they do not reopen the files if possible.
      */
     void reset();
 
+    /**
+     * Returns the position of the current character, which is the byte offset of its beginning in the file.
+     * Both surrogates of a character outside the Basic Multilingual Plane have the position of the character.
+     * At the end of file, this is the size of the file.
+     *
+     * The default implementation throws {@link UnsupportedOperationException}.
+     *
+     * @return the position of the current character.
+     */
+    default long position() {
+        throw new UnsupportedOperationException("This stream does not support positions");
+    }
+
+    /**
+     * Moves the stream to the given position, obtained by {@link #position()}, so that the character
+     * at that position becomes the current one. A position beyond the end of file moves the stream to the end of file.
+     * The streams which read files do this in constant time on uncompressed files
+     * and within the buffer, see also {@link #mark()}.
+     *
+     * The default implementation supports only the zero position, which resets the stream.
+     *
+     * @param position the position to move to.
+     * @throws IllegalArgumentException if the position is negative.
+     */
+    default void seek(long position) {
+        if (position != 0) {
+            throw new UnsupportedOperationException("This stream does not support positions");
+        }
+        reset();
+    }
+
+    /**
+     * Marks the current position in order to return to it later by {@link #rewind(long)}.
+     * Unlike {@link #position()}, this tells the stream that the bytes after the mark will be read again,
+     * so the streams which cannot seek cheaply, such as the ones reading compressed files,
+     * keep a bounded number of them in memory. Only the most recent mark is kept.
+     *
+     * @return the mark, which is the current position.
+     */
+    default long mark() {
+        return position();
+    }
+
+    /**
+     * Returns to the given mark, obtained by {@link #mark()}.
+     *
+     * @param mark the mark.
+     */
+    default void rewind(long mark) {
+        seek(mark);
+    }
+
     /**
      * Closes the stream.
      */
@@ -109,6 +163,44 @@ public interface InStream extends Closeable {
      */
     String nextToken();
 
+    /**
+     * Reads the next token in the same way as {@link #nextToken()} does, but returns a view of it,
+     * which is valid until the next read from this stream. The streams reading files reuse the view
+     * and create no objects, so checkers which only compare tokens do not allocate memory per token.
+     *
+     * @return the view of the next token.
+     */
+    default Token nextTokenView() {
+        return Token.of(nextToken());
+    }
+
+    /**
+     * Returns the maximum length of a token, in characters, which this stream reads before it quits
+     * with {@link Outcome.Type#PE}, see the {@code testlib.max.token} property. The checkers which read tokens
+     * character by character, with {@link #nextChar()}, may stop at the same limit.
+     *
+     * The default implementation returns {@link Long#MAX_VALUE}, that is, there is no limit.
+     *
+     * @return the maximum length of a token.
+     */
+    default long maxTokenLength() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the index of the tokens and the lines of this stream, which gives access to them by their numbers,
+     * and is built lazily as they are accessed, see {@link TokenIndex}. The index reads the file separately,
+     * so it does not affect the reading of this stream. The streams which read files create the index
+     * the first time this is called, and close it when they are closed.
+     *
+     * The default implementation throws {@link UnsupportedOperationException}.
+     *
+     * @return the index of the tokens and the lines.
+     */
+    default TokenIndex tokenIndex() {
+        throw new UnsupportedOperationException("This stream does not support indexing");
+    }
+
     /**
      * Returns next {@code int}. Whitespace characters are used as delimiters.
      *
@@ -151,6 +243,83 @@ public interface InStream extends Closeable {
      */
     String nextLine();
 
+    /**
+     * Reads the given number of {@code int}s into the given array. Whitespace characters are used as delimiters.
+     *
+     * @param destination the array to read into.
+     * @param offset the index in the array to store the first number at.
+     * @param length the number of numbers to read.
+     */
+    default void nextInts(int[] destination, int offset, int length) {
+        for (int i = 0; i < length; ++i) {
+            destination[offset + i] = nextInt();
+        }
+    }
+
+    /**
+     * Reads the given number of {@code long}s into the given array. Whitespace characters are used as delimiters.
+     *
+     * @param destination the array to read into.
+     * @param offset the index in the array to store the first number at.
+     * @param length the number of numbers to read.
+     */
+    default void nextLongs(long[] destination, int offset, int length) {
+        for (int i = 0; i < length; ++i) {
+            destination[offset + i] = nextLong();
+        }
+    }
+
+    /**
+     * Reads the given number of {@code double}s into the given array. Whitespace characters are used as delimiters.
+     *
+     * @param destination the array to read into.
+     * @param offset the index in the array to store the first number at.
+     * @param length the number of numbers to read.
+     */
+    default void nextDoubles(double[] destination, int offset, int length) {
+        for (int i = 0; i < length; ++i) {
+            destination[offset + i] = nextDouble();
+        }
+    }
+
+    /**
+     * Reads {@code long}s until the end of file is reached. Whitespace characters are used as delimiters.
+     *
+     * @return the array of all the numbers read.
+     */
+    default long[] readAllLongs() {
+        long[] result = new long[16];
+        int size = 0;
+        while (!seekEoF()) {
+            if (size == result.length) {
+                result = Arrays.copyOf(result, 2 * size);
+            }
+            result[size++] = nextLong();
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Compares the contents of this stream and the other one as sequences of words,
+     * which are maximal sequences of non-whitespace characters. This is a fast path for the checkers
+     * which compare the output and the answer modulo whitespace: the streams which read files
+     * compare them in large blocks of bytes, collapsing the runs of ASCII whitespace on the fly,
+     * without decoding characters or creating strings.
+     *
+     * This shall be called before anything is read from both streams. If the words are the same,
+     * both streams are left at the end of file. Otherwise, or if the comparison in the byte domain is not possible,
+     * for instance, because of non-ASCII characters, both streams are reset, so that the caller can compare them
+     * word by word to report the difference. The default implementation always does the latter.
+     *
+     * @param other the stream to compare with.
+     * @return the number of words if the words are the same, or -1 if they need to be compared word by word.
+     */
+    default long matchWords(InStream other) {
+        reset();
+        other.reset();
+        return -1;
+    }
+
     /**
      * Throws a new outcome with the given type and message,
      * where the type is adjusted in order to match the semantics of this particular stream.
@@ -200,7 +369,7 @@ public interface InStream extends Closeable {
      * @throws Outcome the newly created outcome.
      */
     default Outcome quitp(double points, String formatString, Object... arguments) {
-        throw quitp(points, String.format(formatString, arguments));
+        throw new PointsOutcome(points, formatString, arguments);
     }
 
     /**
@@ -227,7 +396,7 @@ public interface InStream extends Closeable {
      * @throws Outcome the newly created outcome.
      */
     default Outcome quitp(int points, String formatString, Object... arguments) {
-        throw quitp(points, String.format(formatString, arguments));
+        throw new PointsOutcome(points, formatString, arguments);
     }
 
     void setOutcomeMapping(Outcome.Type from, Outcome.Type to);
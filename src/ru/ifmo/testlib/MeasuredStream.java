@@ -0,0 +1,22 @@
+package ru.ifmo.testlib;
+
+/**
+ * A stream which counts what it has read, for the metrics of the checks, see {@link CheckMetrics}.
+ *
+ * @author Maxim Buzdalov
+ */
+interface MeasuredStream {
+    /**
+     * Returns the number of bytes of the source consumed since the stream was reset last time.
+     *
+     * @return the number of bytes consumed.
+     */
+    long bytesConsumed();
+
+    /**
+     * Returns the number of tokens read, including the ones read before the stream was reset.
+     *
+     * @return the number of tokens read.
+     */
+    long tokensConsumed();
+}
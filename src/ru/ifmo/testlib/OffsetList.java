@@ -0,0 +1,162 @@
+package ru.ifmo.testlib;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A growing list of {@code long} offsets, which is stored off the heap, in direct buffers.
+ *
+ * The buffers double in size, starting from {@link #FIRST_CHUNK_SIZE} offsets, so small files take little memory,
+ * until they reach {@link #MAX_CHUNK_SIZE} offsets, which is the size of all the following buffers,
+ * since a direct buffer cannot be larger than two gigabytes. The elements are never moved,
+ * and they are located in constant time. The buffers are freed by {@link #free()} at once,
+ * rather than when they are collected, where the JVM allows this.
+ *
+ * @author Maxim Buzdalov
+ */
+final class OffsetList {
+    /** The number of offsets in the first buffer, which is a power of two. */
+    private static final int FIRST_CHUNK_SIZE = 1 << 10;
+
+    /** The binary logarithm of {@link #FIRST_CHUNK_SIZE}. */
+    private static final int FIRST_CHUNK_BITS = Integer.numberOfTrailingZeros(FIRST_CHUNK_SIZE);
+
+    /** The number of offsets in the largest buffers, which take one gigabyte each. */
+    private static final int MAX_CHUNK_SIZE = 1 << 27;
+
+    /** The binary logarithm of {@link #MAX_CHUNK_SIZE}. */
+    private static final int MAX_CHUNK_BITS = Integer.numberOfTrailingZeros(MAX_CHUNK_SIZE);
+
+    /** The number of buffers which double in size. */
+    private static final int GROWING_CHUNKS = MAX_CHUNK_BITS - FIRST_CHUNK_BITS;
+
+    /** The total number of offsets in the buffers which double in size. */
+    private static final long GROWING_SIZE = ((long) FIRST_CHUNK_SIZE << GROWING_CHUNKS) - FIRST_CHUNK_SIZE;
+
+    /** Frees a direct buffer at once, or does nothing if the JVM does not allow this. */
+    private static final Consumer<ByteBuffer> FREE_BUFFER = findBufferFreeing();
+
+    /**
+     * The buffers, the i-th of which contains {@code FIRST_CHUNK_SIZE << i} offsets if it is one of
+     * the {@link #GROWING_CHUNKS} first ones, and {@link #MAX_CHUNK_SIZE} offsets otherwise.
+     */
+    private ByteBuffer[] buffers = new ByteBuffer[GROWING_CHUNKS + 1];
+
+    /** The views of the buffers as {@code long} offsets. */
+    private LongBuffer[] chunks = new LongBuffer[GROWING_CHUNKS + 1];
+
+    /** The number of offsets. */
+    private long size;
+
+    /**
+     * Returns the number of offsets.
+     *
+     * @return the number of offsets.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Appends an offset to the list.
+     *
+     * @param offset the offset.
+     */
+    void add(long offset) {
+        int chunk = chunkOf(size);
+        if (chunk == chunks.length) {
+            buffers = Arrays.copyOf(buffers, 2 * chunk);
+            chunks = Arrays.copyOf(chunks, 2 * chunk);
+        }
+        if (chunks[chunk] == null) {
+            int capacity = chunk < GROWING_CHUNKS ? FIRST_CHUNK_SIZE << chunk : MAX_CHUNK_SIZE;
+            buffers[chunk] = ByteBuffer.allocateDirect(8 * capacity);
+            chunks[chunk] = buffers[chunk].asLongBuffer();
+        }
+        chunks[chunk].put(indexInChunk(size, chunk), offset);
+        ++size;
+    }
+
+    /**
+     * Returns the offset with the given index.
+     *
+     * @param index the index, which is less than the size of the list.
+     * @return the offset.
+     */
+    long get(long index) {
+        int chunk = chunkOf(index);
+        return chunks[chunk].get(indexInChunk(index, chunk));
+    }
+
+    /**
+     * Frees the buffers and makes the list empty. The list shall not be used afterwards.
+     */
+    void free() {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer != null) {
+                FREE_BUFFER.accept(buffer);
+            }
+        }
+        buffers = new ByteBuffer[0];
+        chunks = new LongBuffer[0];
+        size = 0;
+    }
+
+    private static int chunkOf(long index) {
+        if (index < GROWING_SIZE) {
+            return 63 - Long.numberOfLeadingZeros((index >>> FIRST_CHUNK_BITS) + 1);
+        }
+        return GROWING_CHUNKS + (int) ((index - GROWING_SIZE) >>> MAX_CHUNK_BITS);
+    }
+
+    private static int indexInChunk(long index, int chunk) {
+        if (chunk < GROWING_CHUNKS) {
+            return (int) (index - ((long) FIRST_CHUNK_SIZE << chunk) + FIRST_CHUNK_SIZE);
+        }
+        return (int) (index - GROWING_SIZE) & (MAX_CHUNK_SIZE - 1);
+    }
+
+    /**
+     * Finds the way to free a direct buffer at once: {@code Unsafe.invokeCleaner} in Java 9 and later,
+     * or the cleaner of the buffer in Java 8. If neither is available, the buffers are freed when they are collected.
+     *
+     * @return the function which frees a direct buffer.
+     */
+    private static Consumer<ByteBuffer> findBufferFreeing() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Object unsafe = theUnsafe.get(null);
+            return buffer -> invoke(invokeCleaner, unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // This is not Java 9 or later, or Unsafe is not accessible.
+        }
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object bufferCleaner = invoke(cleaner, buffer);
+                if (bufferCleaner != null) {
+                    invoke(clean, bufferCleaner);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return buffer -> {};
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... arguments) {
+        try {
+            return method.invoke(target, arguments);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // The buffer is freed when it is collected.
+            return null;
+        }
+    }
+}
@@ -5,7 +5,15 @@ import java.util.EnumMap;
 import java.util.Map;
 
 /**
- * Describes an outcome. The instances of the class are immutable.
+ * Describes an outcome. The type and the comment of an outcome do not change after it is created,
+ * although the comment may be formatted later, as described below.
+ *
+ * As outcomes are often thrown, and sometimes thrown and caught many times, they are made cheap:
+ * the stack trace is not captured unless the {@code testlib.outcome.stacktrace} property is {@code true},
+ * and the comment given as a format string with arguments is formatted only when it is first requested.
+ * For this reason, the arguments should not be modified after the outcome is created.
+ * The framework requests the comment as soon as the checker finishes, so an invalid format string
+ * still results in {@link Type#FAIL}.
  *
  * @author Maxim Buzdalov
  * @author Andrew Stankevich
@@ -23,7 +31,21 @@ public class Outcome extends RuntimeException {
      * @throws Outcome the newly created outcome.
      */
     public static Outcome quit(Type type, String formatString, Object... arguments) {
-        throw new Outcome(type, String.format(formatString, arguments));
+        throw new Outcome(type, formatString, arguments);
+    }
+
+    /**
+     * Returns a new outcome with the given type and message composed from the given format string and arguments.
+     * Unlike {@link #quit(Type, String, Object...)}, the outcome is not thrown,
+     * so it is the cheapest way to finish {@link Checker#test(InStream, InStream, InStream)}.
+     *
+     * @param type the type of the outcome.
+     * @param formatString the format string for the message to be specified in the outcome.
+     * @param arguments the arguments for the message to be specified in the outcome.
+     * @return the newly created outcome.
+     */
+    public static Outcome of(Type type, String formatString, Object... arguments) {
+        return new Outcome(type, formatString, arguments);
     }
 
     /**
@@ -36,7 +58,7 @@ public class Outcome extends RuntimeException {
      * @throws Outcome the newly created outcome.
      */
     public static Outcome quitp(double points, String formatString, Object... arguments) {
-        throw new PointsOutcome(points, String.format(formatString, arguments));
+        throw new PointsOutcome(points, formatString, arguments);
     }
 
     /**
@@ -49,7 +71,7 @@ public class Outcome extends RuntimeException {
      * @throws Outcome the newly created outcome.
      */
     public static Outcome quitp(int points, String formatString, Object... arguments) {
-        throw new PointsOutcome(points, String.format(formatString, arguments));
+        throw new PointsOutcome(points, formatString, arguments);
     }
 
     /**
@@ -59,6 +81,11 @@ public class Outcome extends RuntimeException {
         OK, WA, PE, FAIL, POINTS
     }
 
+    /**
+     * Whether the stack traces of outcomes are captured, which may be useful for debugging.
+     */
+    private static final boolean CAPTURE_STACK_TRACE = Boolean.getBoolean("testlib.outcome.stacktrace");
+
     /**
      * An outcome remapping used for input and answer {@link InStream}s.
      */
@@ -76,9 +103,13 @@ public class Outcome extends RuntimeException {
      */
     private final Type type;
     /**
-     * A comment to the outcome.
+     * A comment to the outcome, or the format string for it if {@link #arguments} is not {@code null}.
      */
-    private final String comment;
+    private String comment;
+    /**
+     * The arguments for the format string, or {@code null} if the comment is already formatted.
+     */
+    private Object[] arguments;
 
     /**
      * Creates a new outcome.
@@ -87,8 +118,21 @@ public class Outcome extends RuntimeException {
      * @param comment the comment to the outcome.
      */
     public Outcome(Type type, String comment) {
+        this(type, comment, null);
+    }
+
+    /**
+     * Creates a new outcome with the comment to be formatted when requested.
+     *
+     * @param type the type of the outcome.
+     * @param formatString the format string for the comment, or the comment itself if there are no arguments.
+     * @param arguments the arguments for the format string, or {@code null} if there is nothing to format.
+     */
+    Outcome(Type type, String formatString, Object[] arguments) {
+        super(null, null, false, CAPTURE_STACK_TRACE);
         this.type = type;
-        this.comment = comment;
+        this.comment = formatString;
+        this.arguments = arguments;
     }
 
     /**
@@ -106,6 +150,10 @@ public class Outcome extends RuntimeException {
      * @return the comment.
      */
     public String getComment() {
+        if (arguments != null) {
+            comment = String.format(comment, arguments);
+            arguments = null;
+        }
         return comment;
     }
 }
@@ -4,12 +4,18 @@ public class PointsOutcome extends Outcome {
     private final double points;
     private final boolean isInt;
     public PointsOutcome(double points, String comment) {
-        super(Type.POINTS, comment);
+        this(points, comment, null);
+    }
+    public PointsOutcome(int points, String comment) {
+        this(points, comment, null);
+    }
+    PointsOutcome(double points, String formatString, Object[] arguments) {
+        super(Type.POINTS, formatString, arguments);
         this.points = points;
         this.isInt = false;
     }
-    public PointsOutcome(int points, String comment) {
-        super(Type.POINTS, comment);
+    PointsOutcome(int points, String formatString, Object[] arguments) {
+        super(Type.POINTS, formatString, arguments);
         this.points = points;
         this.isInt = true;
     }
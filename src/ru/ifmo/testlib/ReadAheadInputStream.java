@@ -0,0 +1,176 @@
+package ru.ifmo.testlib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream which reads the underlying stream ahead of the consumer in a background thread.
+ *
+ * The data is passed through a fixed number of chunks, so that the background thread fills one chunk
+ * while the consumer reads from another one, and the memory used is bounded by {@link #CHUNK_COUNT} chunks
+ * of {@link #CHUNK_SIZE} bytes. Reading of the output and the answer files, as well as slow operations
+ * of the underlying streams, such as decompression, are thus overlapped with parsing.
+ *
+ * @author Maxim Buzdalov
+ */
+class ReadAheadInputStream extends InputStream {
+    /** The size of a chunk, in bytes. */
+    private static final int CHUNK_SIZE = 1 << 18;
+
+    /** The number of chunks: one is filled by the background thread, and one is read by the consumer. */
+    private static final int CHUNK_COUNT = 2;
+
+    /** The underlying stream. */
+    private final InputStream source;
+
+    /** The chunks which can be filled by the background thread. */
+    private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(CHUNK_COUNT);
+
+    /** The chunks filled by the background thread, in the order of reading. */
+    private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(CHUNK_COUNT);
+
+    /** The background thread. */
+    private final Thread reader;
+
+    /** The chunk the consumer reads from, or {@code null} if none is taken yet. */
+    private Chunk current;
+
+    /** The position of the next byte to read in the current chunk. */
+    private int position;
+
+    /** Whether the stream is closed. */
+    private volatile boolean isClosed;
+
+    /**
+     * Creates a new stream which reads from the given stream in a background thread.
+     *
+     * @param source the underlying stream.
+     * @param name the name of the stream, used to name the background thread.
+     */
+    ReadAheadInputStream(InputStream source, String name) {
+        this.source = source;
+        for (int i = 0; i < CHUNK_COUNT; ++i) {
+            free.add(new Chunk());
+        }
+        reader = new Thread(this::readAhead, "testlib-read-ahead: " + name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * The body of the background thread: fills free chunks with the data from the underlying stream
+     * until it is exhausted, fails, or this stream is closed. Any failure of the underlying stream,
+     * including unchecked exceptions and errors, is passed to the consumer as an {@link IOException}.
+     */
+    private void readAhead() {
+        try {
+            while (true) {
+                Chunk chunk = free.take();
+                try {
+                    chunk.length = source.read(chunk.data, 0, CHUNK_SIZE);
+                } catch (IOException ex) {
+                    chunk.error = ex;
+                    chunk.length = -1;
+                } catch (RuntimeException | Error ex) {
+                    // Otherwise the thread would die without posting a chunk, and the consumer would wait forever.
+                    chunk.error = new IOException(ex);
+                    chunk.length = -1;
+                }
+                filled.put(chunk);
+                if (chunk.length < 0) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            // This stream is closed, so just stop.
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current.data[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int result = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, result);
+        position += result;
+        return result;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current.length < 0 ? 0 : current.length - position;
+    }
+
+    /**
+     * Makes sure the current chunk has bytes to read, waiting for the background thread if needed.
+     *
+     * @return {@code true} if there are bytes to read, {@code false} if the underlying stream is exhausted.
+     * @throws IOException if the underlying stream has failed, or the waiting has been interrupted.
+     */
+    private boolean ensureAvailable() throws IOException {
+        while (current == null || current.length >= 0 && position == current.length) {
+            if (isClosed) {
+                throw new IOException("Stream closed");
+            }
+            if (current != null) {
+                free.add(current);
+            }
+            try {
+                current = filled.take();
+            } catch (InterruptedException ex) {
+                current = null;
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the data");
+            }
+            position = 0;
+        }
+        if (current.error != null) {
+            throw current.error;
+        }
+        return current.length >= 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        reader.interrupt();
+        // The background thread stops after at most one read, and then the source can be closed safely,
+        // which is important for sources like decompressing streams, which are not safe to close concurrently.
+        boolean interrupted = false;
+        while (reader.isAlive()) {
+            try {
+                reader.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+    }
+
+    /**
+     * A chunk of data read from the underlying stream.
+     */
+    private static class Chunk {
+        private final byte[] data = new byte[CHUNK_SIZE];
+        private int length;
+        private IOException error;
+    }
+}
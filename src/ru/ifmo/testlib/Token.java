@@ -0,0 +1,152 @@
+package ru.ifmo.testlib;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A view of a token read by {@link InStream#nextTokenView()}, which is valid until the next read from the stream.
+ *
+ * The view is reused by the stream, and refers either to the bytes of the stream buffer, if the token consists
+ * of ASCII characters, or to the reusable character buffer, so reading tokens this way creates no objects.
+ * The comparison and hashing methods do not create objects either. To keep the token after the next read,
+ * or to pass it as an argument of an outcome, which may be formatted later, convert it with {@link #toString()}.
+ *
+ * @author Maxim Buzdalov
+ */
+public final class Token implements CharSequence {
+    /** The characters of the token, if it is backed by characters. */
+    private char[] chars;
+
+    /** The bytes of the token, if it is backed by ASCII bytes. */
+    private byte[] bytes;
+
+    /** The offset of the token in the array. */
+    private int offset;
+
+    /** The length of the token. */
+    private int length;
+
+    Token() {}
+
+    /**
+     * Creates a token which holds the given string.
+     *
+     * @param token the string.
+     * @return the token.
+     */
+    static Token of(String token) {
+        Token result = new Token();
+        result.set(token.toCharArray(), 0, token.length());
+        return result;
+    }
+
+    void set(char[] chars, int offset, int length) {
+        this.chars = chars;
+        this.bytes = null;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    void set(byte[] bytes, int offset, int length) {
+        this.chars = null;
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for length " + length);
+        }
+        return bytes != null ? (char) bytes[offset + index] : chars[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /**
+     * Checks whether the token consists of the same characters as the given sequence.
+     *
+     * @param other the sequence to compare with.
+     * @return {@code true} if the characters are the same, {@code false} otherwise.
+     */
+    public boolean contentEquals(CharSequence other) {
+        if (other.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (charAt(i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the token consists of the same characters as the given sequence, ignoring case,
+     * in the same way as {@link String#equalsIgnoreCase(String)} does.
+     *
+     * @param other the sequence to compare with.
+     * @return {@code true} if the characters are the same up to case, {@code false} otherwise.
+     */
+    public boolean equalsIgnoreCase(CharSequence other) {
+        if (other.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            char a = charAt(i), b = other.charAt(i);
+            if (a != b) {
+                char upperA = Character.toUpperCase(a), upperB = Character.toUpperCase(b);
+                if (upperA != upperB && Character.toLowerCase(upperA) != Character.toLowerCase(upperB)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the token starts with the given sequence.
+     *
+     * @param prefix the prefix.
+     * @return {@code true} if the token starts with the prefix, {@code false} otherwise.
+     */
+    public boolean startsWith(CharSequence prefix) {
+        int prefixLength = prefix.length();
+        if (prefixLength > length) {
+            return false;
+        }
+        for (int i = 0; i < prefixLength; ++i) {
+            if (charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code of the characters of the token, which is the same as the hash code
+     * of the equal {@link String}, so that tokens can be looked up by precomputed hash codes of strings.
+     *
+     * @return the hash code of the characters.
+     */
+    public int contentHashCode() {
+        int hash = 0;
+        for (int i = 0; i < length; ++i) {
+            hash = 31 * hash + charAt(i);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return bytes != null ? new String(bytes, offset, length, StandardCharsets.ISO_8859_1) : new String(chars, offset, length);
+    }
+}
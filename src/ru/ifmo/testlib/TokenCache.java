@@ -0,0 +1,283 @@
+package ru.ifmo.testlib;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A binary cache of the tokens of a file, stored next to the file, which makes repeated reading of the file cheap.
+ *
+ * For every token delimited by spaces, tabs and line breaks, the cache contains a record of {@link #RECORD_SIZE} bytes:
+ * the byte offset and the length of the token, the flags telling whether the token is a valid {@code long}
+ * and a valid {@code double}, and the parsed value. The records are read through memory mapping,
+ * see {@link CachedInStream}, which serves the tokens exactly as the text parsing would do.
+ *
+ * The cache is built for files which consist of ASCII characters only, and have no whitespace characters
+ * other than spaces, tabs and line breaks, which are the token delimiters. For other files, the cache only
+ * records that the file is not cacheable. The cache is valid while the size, the modification time
+ * and the CRC32 of the whole file remain the same, so a file regenerated with the same size and modification time
+ * is not served stale. Hashing is a sequential read of the file, which is much cheaper than parsing it.
+ * The cache is written to a temporary file which is then atomically renamed, so concurrent checkers are safe.
+ *
+ * @author Maxim Buzdalov
+ */
+final class TokenCache {
+    private TokenCache() {}
+
+    /** The suffix which is appended to the file name to get the cache file name. */
+    static final String SUFFIX = ".tl4j-cache";
+
+    /** The magic number at the beginning of a cache file, which also includes the version of the format. */
+    private static final long MAGIC = 0x544C344A43414302L;
+
+    /** The size of the header: magic, file size, modification time, hash, cacheable flag and the number of tokens. */
+    private static final int HEADER_SIZE = 8 + 8 + 8 + 8 + 4 + 4;
+
+    /** The size of a token record: offset, length, flags and value. */
+    static final int RECORD_SIZE = 8 + 4 + 4 + 8;
+
+    /** The flag meaning that the token is a valid {@code long}, which is the value of the record. */
+    static final int IS_LONG = 1;
+
+    /** The flag meaning that the token is a valid finite {@code double}, which is the value of the record. */
+    static final int IS_DOUBLE = 2;
+
+    /**
+     * The flag meaning that the token is a valid finite {@code double}, which is equal to the value of the record,
+     * which is a {@code long}, converted to {@code double}.
+     */
+    static final int IS_DOUBLE_AS_LONG = 4;
+
+    /** The value returned by {@link #tryMap} if the cache says the file is not cacheable. */
+    private static final ByteBuffer NOT_CACHEABLE = ByteBuffer.allocate(0);
+
+    /**
+     * Opens the cached tokens of the given file, creating the cache if it does not exist or is outdated.
+     *
+     * @param file the file.
+     * @param charset the charset of the file.
+     * @return the memory-mapped token records, positioned at the first record,
+     *         or {@code null} if the file cannot be cached or cannot be read.
+     */
+    static ByteBuffer open(File file, Charset charset) {
+        if (!isAsciiCompatible(charset)) {
+            return null;
+        }
+        try {
+            File cacheFile = new File(file.getPath() + SUFFIX);
+            long size = file.length();
+            long lastModified = file.lastModified();
+            long hash = hash(file);
+            ByteBuffer records = tryMap(cacheFile, size, lastModified, hash);
+            if (records == null) {
+                build(file, cacheFile, size, lastModified, hash);
+                records = tryMap(cacheFile, size, lastModified, hash);
+            }
+            return records == NOT_CACHEABLE ? null : records;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Maps the token records of the cache file if it exists and corresponds to the file.
+     *
+     * @return the token records, {@link #NOT_CACHEABLE} if the cache says the file is not cacheable,
+     *         or {@code null} if the cache is missing or outdated.
+     */
+    private static ByteBuffer tryMap(File cacheFile, long size, long lastModified, long hash) throws IOException {
+        if (!cacheFile.isFile() || cacheFile.length() < HEADER_SIZE) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "r")) {
+            if (raf.readLong() != MAGIC || raf.readLong() != size
+                    || raf.readLong() != lastModified || raf.readLong() != hash) {
+                return null;
+            }
+            boolean isCacheable = raf.readInt() != 0;
+            int count = raf.readInt();
+            if (!isCacheable) {
+                return NOT_CACHEABLE;
+            }
+            if (raf.length() != HEADER_SIZE + (long) count * RECORD_SIZE) {
+                return null;
+            }
+            if (count == 0) {
+                // Empty regions cannot be mapped on some platforms.
+                return ByteBuffer.allocate(0);
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) count * RECORD_SIZE);
+        }
+    }
+
+    /**
+     * Tokenizes the file and writes the cache file. Failures to write the cache are ignored, as the cache is optional.
+     */
+    private static void build(File file, File cacheFile, long size, long lastModified, long hash) throws IOException {
+        Path temporary;
+        try {
+            temporary = Files.createTempFile(cacheFile.getAbsoluteFile().toPath().getParent(), cacheFile.getName(), ".tmp");
+        } catch (IOException | SecurityException ex) {
+            return;
+        }
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16));
+                 InputStream in = new FileInputStream(file)) {
+                out.writeLong(MAGIC);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+                out.writeLong(hash);
+                // The flag and the count are patched after all the tokens are written.
+                out.writeInt(0);
+                out.writeInt(0);
+                int count = tokenize(in, out, size);
+                out.flush();
+                try (RandomAccessFile raf = new RandomAccessFile(temporary.toFile(), "rw")) {
+                    raf.seek(HEADER_SIZE - 8);
+                    raf.writeInt(count >= 0 ? 1 : 0);
+                    raf.writeInt(Math.max(count, 0));
+                    if (count < 0) {
+                        raf.setLength(HEADER_SIZE);
+                    }
+                }
+            }
+            Files.move(temporary, cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            // Another checker might have created the cache concurrently, or the directory is not writable.
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Writes the token records of the given stream.
+     *
+     * @return the number of tokens, or -1 if the file is not cacheable.
+     */
+    private static int tokenize(InputStream in, DataOutputStream out, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            return -1;
+        }
+        byte[] buffer = new byte[1 << 16];
+        byte[] token = new byte[64];
+        int tokenLength = 0;
+        long bufferOffset = 0;
+        int count = 0;
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            for (int i = 0; i < read; ++i) {
+                byte b = buffer[i];
+                if (b < 0 || b == 0x0B || b == 0x0C || 0x1C <= b && b <= 0x1F) {
+                    // Non-ASCII characters, and whitespace characters which are not delimiters.
+                    return -1;
+                }
+                if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                    if (tokenLength > 0) {
+                        writeRecord(out, bufferOffset + i - tokenLength, token, tokenLength);
+                        ++count;
+                        tokenLength = 0;
+                    }
+                } else {
+                    if (tokenLength == token.length) {
+                        token = Arrays.copyOf(token, 2 * tokenLength);
+                    }
+                    token[tokenLength++] = b;
+                }
+            }
+            bufferOffset += read;
+        }
+        if (tokenLength > 0) {
+            writeRecord(out, bufferOffset - tokenLength, token, tokenLength);
+            ++count;
+        }
+        if ((long) count * RECORD_SIZE > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return count;
+    }
+
+    private static void writeRecord(DataOutputStream out, long offset, byte[] token, int length) throws IOException {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; ++i) {
+            chars[i] = (char) token[i];
+        }
+        int flags = 0;
+        long value = 0;
+        try {
+            value = AbstractInStream.parseInteger(chars, length, Long.MIN_VALUE, Long.MAX_VALUE);
+            flags |= IS_LONG;
+        } catch (NumberFormatException ex) {
+            // Not a long, which is fine.
+        }
+        double doubleValue = parseDouble(token, length);
+        if (doubleValue == doubleValue) {
+            if ((flags & IS_LONG) == 0) {
+                flags |= IS_DOUBLE;
+                value = Double.doubleToRawLongBits(doubleValue);
+            } else if (Double.doubleToRawLongBits(doubleValue) == Double.doubleToRawLongBits((double) value)) {
+                flags |= IS_DOUBLE_AS_LONG;
+            }
+        }
+        out.writeLong(offset);
+        out.writeInt(length);
+        out.writeInt(flags);
+        out.writeLong(value);
+    }
+
+    /**
+     * Parses a double in the same way {@link InStream#nextDouble()} does.
+     *
+     * @return the parsed value, or {@link Double#NaN} if the token is not a valid finite double.
+     */
+    private static double parseDouble(byte[] token, int length) {
+        double value = FastDoubleParser.parseDouble(token, 0, length);
+        if (value == value) {
+            return value;
+        }
+        try {
+            value = Double.parseDouble(new String(token, 0, length, StandardCharsets.ISO_8859_1));
+            return Double.isInfinite(value) ? Double.NaN : value;
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Computes the CRC32 of the whole file.
+     */
+    private static long hash(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Checks whether the bytes from 0 to 127 always mean the corresponding ASCII characters in the given charset.
+     */
+    private static boolean isAsciiCompatible(Charset charset) {
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; ++i) {
+            ascii[i] = (byte) i;
+        }
+        return new String(ascii, charset).equals(new String(ascii, StandardCharsets.ISO_8859_1));
+    }
+}
@@ -0,0 +1,195 @@
+package ru.ifmo.testlib;
+
+/**
+ * An index of the tokens and the lines of a stream, which gives random access to them by their numbers.
+ *
+ * The index is built lazily and incrementally: accessing the k-th token scans the file only up to that token,
+ * unless it is already scanned. Only the positions of the tokens and the lines are stored, eight bytes each,
+ * off the heap, and the tokens and the lines are read again when accessed, by a separate reader of the same file.
+ * So the memory taken is proportional to the number of tokens and lines rather than to their contents,
+ * and the stream the index belongs to is not affected by the index.
+ *
+ * The tokens are the ones read by {@link InStream#nextToken()}, and the lines are the ones read by
+ * {@link InStream#nextLine()}, ending with {@code "\n"}, {@code "\r\n"} or {@code "\r"}.
+ * The file consists of no lines if it is empty, and an empty line after the last line break is not counted.
+ * The positions are the ones of the stream the index belongs to, so it can be moved there by {@link InStream#seek(long)}.
+ * Accessing the scanned tokens and lines takes constant time on uncompressed files.
+ *
+ * @author Maxim Buzdalov
+ */
+public final class TokenIndex {
+    /** The delimiters of tokens which do not end lines. */
+    private static final DelimiterSet SPACES = DelimiterSet.of(" \t");
+
+    /** The stream the index belongs to, which is used to report errors. */
+    private final InStream owner;
+
+    /** The reader which scans the file and reads the tokens and the lines. */
+    private final AbstractInStream reader;
+
+    /** The positions of the tokens scanned so far. */
+    private final OffsetList tokens = new OffsetList();
+
+    /** The positions of the lines scanned so far. */
+    private final OffsetList lines = new OffsetList();
+
+    /** The position the scanning stopped at. */
+    private long scanned;
+
+    /** Whether the whole file is scanned. */
+    private boolean isScanned;
+
+    /** Whether the index is closed. */
+    private boolean isClosed;
+
+    /**
+     * Creates a new index.
+     *
+     * @param owner the stream the index belongs to.
+     * @param reader another stream reading the same file, which is owned by the index.
+     */
+    TokenIndex(InStream owner, AbstractInStream reader) {
+        this.owner = owner;
+        this.reader = reader;
+        if (reader.isEoF()) {
+            isScanned = true;
+        } else {
+            lines.add(0);
+        }
+    }
+
+    /**
+     * Returns the number of tokens in the file, scanning the whole file if it is not scanned yet.
+     *
+     * @return the number of tokens.
+     */
+    public long tokenCount() {
+        scan(Long.MAX_VALUE, Long.MAX_VALUE);
+        return tokens.size();
+    }
+
+    /**
+     * Returns the number of lines in the file, scanning the whole file if it is not scanned yet.
+     *
+     * @return the number of lines.
+     */
+    public long lineCount() {
+        scan(Long.MAX_VALUE, Long.MAX_VALUE);
+        return lines.size();
+    }
+
+    /**
+     * Returns the position of the token with the given number.
+     *
+     * @param k the number of the token, starting from zero.
+     * @return the position of the token.
+     * @throws Outcome of type {@link Outcome.Type#PE} if there are not so many tokens.
+     */
+    public long tokenPosition(long k) {
+        checkIndex(k);
+        scan(k, Long.MAX_VALUE);
+        if (k >= tokens.size()) {
+            throw owner.quit(Outcome.Type.PE, "Token %d is requested, but there are only %d tokens", k, tokens.size());
+        }
+        return tokens.get(k);
+    }
+
+    /**
+     * Returns the position of the line with the given number.
+     *
+     * @param k the number of the line, starting from zero.
+     * @return the position of the line.
+     * @throws Outcome of type {@link Outcome.Type#PE} if there are not so many lines.
+     */
+    public long linePosition(long k) {
+        checkIndex(k);
+        scan(Long.MAX_VALUE, k);
+        if (k >= lines.size()) {
+            throw owner.quit(Outcome.Type.PE, "Line %d is requested, but there are only %d lines", k, lines.size());
+        }
+        return lines.get(k);
+    }
+
+    /**
+     * Returns the token with the given number.
+     *
+     * @param k the number of the token, starting from zero.
+     * @return the token.
+     * @throws Outcome of type {@link Outcome.Type#PE} if there are not so many tokens.
+     */
+    public String tokenAt(long k) {
+        reader.seek(tokenPosition(k));
+        return reader.nextToken();
+    }
+
+    /**
+     * Returns the line with the given number, without the line break.
+     *
+     * @param k the number of the line, starting from zero.
+     * @return the line.
+     * @throws Outcome of type {@link Outcome.Type#PE} if there are not so many lines.
+     */
+    public String lineAt(long k) {
+        reader.seek(linePosition(k));
+        return reader.nextLine();
+    }
+
+    /**
+     * Closes the reader of the index and frees the memory taken by the positions.
+     * The index cannot be used afterwards.
+     */
+    void close() {
+        isClosed = true;
+        reader.close();
+        tokens.free();
+        lines.free();
+    }
+
+    private static void checkIndex(long k) {
+        if (k < 0) {
+            throw new IndexOutOfBoundsException("The number is negative: " + k);
+        }
+    }
+
+    /**
+     * Scans the file until the token or the line with the given number is found, or the whole file is scanned.
+     * This is called before every access, so it also checks that the index is not closed.
+     *
+     * @param token the number of the token to find, or {@link Long#MAX_VALUE} to scan regardless of the tokens.
+     * @param line the number of the line to find, or {@link Long#MAX_VALUE} to scan regardless of the lines.
+     */
+    private void scan(long token, long line) {
+        if (isClosed) {
+            throw new IllegalStateException("The index is closed");
+        }
+        if (isScanned || token < tokens.size() || line < lines.size()) {
+            return;
+        }
+        AbstractInStream reader = this.reader;
+        if (reader.position() != scanned) {
+            reader.seek(scanned);
+        }
+        while (token >= tokens.size() && line >= lines.size()) {
+            int c = reader.currChar();
+            if (c == InStream.EOF_CHAR) {
+                isScanned = true;
+                break;
+            }
+            if (c == '\n' || c == '\r') {
+                reader.nextChar();
+                if (c == '\r' && reader.currChar() == '\n') {
+                    reader.nextChar();
+                }
+                if (!reader.isEoF()) {
+                    lines.add(reader.position());
+                }
+            } else if (SPACES.contains(c)) {
+                reader.skip(SPACES);
+            } else {
+                tokens.add(reader.position());
+                reader.skipNonMembers(DelimiterSet.DEFAULT);
+            }
+        }
+        scanned = reader.position();
+    }
+}
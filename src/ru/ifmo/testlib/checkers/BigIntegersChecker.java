@@ -0,0 +1,48 @@
+package ru.ifmo.testlib.checkers;
+
+import ru.ifmo.testlib.Checker;
+import ru.ifmo.testlib.DecimalIntegers;
+import ru.ifmo.testlib.InStream;
+import ru.ifmo.testlib.Outcome;
+import ru.ifmo.testlib.Token;
+
+import static ru.ifmo.testlib.Outcome.Type.*;
+
+/**
+ * A checker which compares the output and the answer as sequences of integers of arbitrary length,
+ * regardless of the whitespace between them. The integers are compared by their digits,
+ * without converting them into numbers, so leading zeros and the plus sign are allowed.
+ *
+ * @author Maxim Buzdalov
+ */
+public class BigIntegersChecker implements Checker {
+    public Outcome test(InStream inf, InStream ouf, InStream ans) {
+        int count = 0;
+        while (!ans.seekEoF()) {
+            if (ouf.seekEoF()) {
+                return Outcome.of(PE, "After %d matched number(s), the output lacks %d more elements",
+                        count, Words.skipAll(ans));
+            }
+            Token expected = nextInteger(ans);
+            Token found = nextInteger(ouf);
+            ++count;
+            if (DecimalIntegers.compare(expected, found) != 0) {
+                return Outcome.of(WA, "Number %d differs: expected %s, found %s",
+                        count, Words.shorten(expected), Words.shorten(found));
+            }
+        }
+        if (!ouf.seekEoF()) {
+            return Outcome.of(PE, "After %d matched number(s), the output contains %d extra elements",
+                    count, Words.skipAll(ouf));
+        }
+        return Outcome.of(OK, "%d number(s)", count);
+    }
+
+    private static Token nextInteger(InStream stream) {
+        Token token = stream.nextTokenView();
+        if (!DecimalIntegers.isValid(token)) {
+            throw stream.quit(PE, "An integer expected, %s found", Words.shorten(token));
+        }
+        return token;
+    }
+}
@@ -0,0 +1,75 @@
+package ru.ifmo.testlib.checkers;
+
+/**
+ * An excerpt of a word or a line to be shown in a message: its first and last characters, and its length.
+ * It takes constant memory whatever the length of the text is, and it reads the same as
+ * {@link Words#shorten(CharSequence)} of the whole text.
+ *
+ * @author Maxim Buzdalov
+ */
+final class Excerpt {
+    /** The number of the characters kept at each end. */
+    private static final int EDGE = 32;
+
+    /** The first characters. */
+    private final char[] head = new char[EDGE];
+
+    /** The last characters, in a cyclic buffer where the character number {@code i} is at {@code i % EDGE}. */
+    private final char[] tail = new char[EDGE];
+
+    /** The length of the text. */
+    private long length;
+
+    /**
+     * Makes the excerpt empty.
+     */
+    void clear() {
+        length = 0;
+    }
+
+    /**
+     * Appends a character to the text.
+     *
+     * @param c the character.
+     */
+    void append(char c) {
+        if (length < EDGE) {
+            head[(int) length] = c;
+        }
+        tail[(int) (length % EDGE)] = c;
+        ++length;
+    }
+
+    /**
+     * Appends characters to the text.
+     *
+     * @param text the characters.
+     */
+    void append(CharSequence text) {
+        for (int i = 0, n = text.length(); i < n; ++i) {
+            append(text.charAt(i));
+        }
+    }
+
+    /**
+     * Returns the length of the text.
+     *
+     * @return the length of the text.
+     */
+    long length() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(2 * EDGE + 3);
+        result.append(head, 0, (int) Math.min(length, EDGE));
+        if (length > 2 * EDGE) {
+            result.append("...");
+        }
+        for (long i = Math.max(EDGE, length - EDGE); i < length; ++i) {
+            result.append(tail[(int) (i % EDGE)]);
+        }
+        return result.toString();
+    }
+}
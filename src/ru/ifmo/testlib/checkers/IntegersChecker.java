@@ -0,0 +1,36 @@
+package ru.ifmo.testlib.checkers;
+
+import ru.ifmo.testlib.Checker;
+import ru.ifmo.testlib.InStream;
+import ru.ifmo.testlib.Outcome;
+
+import static ru.ifmo.testlib.Outcome.Type.*;
+
+/**
+ * A checker which compares the output and the answer as sequences of 64-bit signed integers,
+ * regardless of the whitespace between them.
+ *
+ * @author Maxim Buzdalov
+ */
+public class IntegersChecker implements Checker {
+    public Outcome test(InStream inf, InStream ouf, InStream ans) {
+        int count = 0;
+        while (!ans.seekEoF()) {
+            if (ouf.seekEoF()) {
+                return Outcome.of(PE, "After %d matched number(s), the output lacks %d more elements",
+                        count, Words.skipAll(ans));
+            }
+            long expected = ans.nextLong();
+            long found = ouf.nextLong();
+            ++count;
+            if (expected != found) {
+                return Outcome.of(WA, "Number %d differs: expected %d, found %d", count, expected, found);
+            }
+        }
+        if (!ouf.seekEoF()) {
+            return Outcome.of(PE, "After %d matched number(s), the output contains %d extra elements",
+                    count, Words.skipAll(ouf));
+        }
+        return Outcome.of(OK, "%d number(s)", count);
+    }
+}
@@ -0,0 +1,53 @@
+package ru.ifmo.testlib.checkers;
+
+import ru.ifmo.testlib.Checker;
+import ru.ifmo.testlib.InStream;
+import ru.ifmo.testlib.Outcome;
+
+import static ru.ifmo.testlib.Outcome.Type.*;
+
+/**
+ * A checker which compares the output and the answer line by line, where each line is a sequence of words,
+ * regardless of the spaces and tabs between them. Empty lines at the end of the files are ignored.
+ *
+ * @author Maxim Buzdalov
+ */
+public class LinesChecker implements Checker {
+    private final Excerpt expectedWord = new Excerpt();
+    private final Excerpt foundWord = new Excerpt();
+
+    public Outcome test(InStream inf, InStream ouf, InStream ans) {
+        int line = 0;
+        while (!ans.isEoF() || !ouf.isEoF()) {
+            ++line;
+            int word = 0;
+            while (true) {
+                boolean expectedEnds = ans.seekEoLn();
+                boolean foundEnds = ouf.seekEoLn();
+                if (expectedEnds && foundEnds) {
+                    break;
+                }
+                if (expectedEnds) {
+                    foundWord.clear();
+                    Words.read(ouf, foundWord);
+                    return Outcome.of(WA, "Line %d contains extra words, starting from word %d: '%s'",
+                            line, word + 1, foundWord.toString());
+                }
+                if (foundEnds) {
+                    expectedWord.clear();
+                    Words.read(ans, expectedWord);
+                    return Outcome.of(WA, "Line %d lacks words, starting from word %d: expected '%s'",
+                            line, word + 1, expectedWord.toString());
+                }
+                ++word;
+                if (!Words.compare(ans, ouf, expectedWord, foundWord)) {
+                    return Outcome.of(WA, "Line %d, word %d differs: expected '%s', found '%s'",
+                            line, word, expectedWord.toString(), foundWord.toString());
+                }
+            }
+            ans.skipLine();
+            ouf.skipLine();
+        }
+        return Outcome.of(OK, "%d line(s)", line);
+    }
+}
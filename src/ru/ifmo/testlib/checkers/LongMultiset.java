@@ -0,0 +1,166 @@
+package ru.ifmo.testlib.checkers;
+
+/**
+ * A multiset of {@code long} values, which is an open-addressing hash table with linear probing.
+ * Unlike a {@code HashMap<Long, Integer>}, it does not box the values and uses 12 bytes per slot.
+ *
+ * @author Maxim Buzdalov
+ */
+public final class LongMultiset {
+    /** The minimum number of slots, which is a power of two. */
+    private static final int MIN_CAPACITY = 16;
+
+    /** The values in the slots. */
+    private long[] keys;
+
+    /** The multiplicities of the values in the slots plus one, or zero for the slots which are not used. */
+    private int[] counts;
+
+    /** The number of slots which are used, including the ones of the values removed completely. */
+    private int usedSlots;
+
+    /** The number of values in the multiset, counting multiplicities. */
+    private long size;
+
+    /**
+     * Creates an empty multiset.
+     */
+    public LongMultiset() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an empty multiset which is expected to contain the given number of distinct values.
+     *
+     * @param expectedDistinct the expected number of distinct values.
+     */
+    public LongMultiset(int expectedDistinct) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < (1 << 30) && capacity / 4 * 3 < expectedDistinct) {
+            capacity *= 2;
+        }
+        keys = new long[capacity];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Adds the value to the multiset.
+     *
+     * @param value the value to add.
+     */
+    public void add(long value) {
+        int slot = find(value);
+        if (counts[slot] == 0) {
+            keys[slot] = value;
+            counts[slot] = 2;
+            ++size;
+            if (++usedSlots > keys.length / 4 * 3) {
+                rehash();
+            }
+            return;
+        }
+        if (counts[slot] == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many occurrences of " + value);
+        }
+        ++counts[slot];
+        ++size;
+    }
+
+    /**
+     * Removes one occurrence of the value from the multiset.
+     *
+     * @param value the value to remove.
+     * @return {@code true} if the value was in the multiset, {@code false} otherwise.
+     */
+    public boolean remove(long value) {
+        int slot = find(value);
+        if (counts[slot] <= 1) {
+            return false;
+        }
+        --counts[slot];
+        --size;
+        return true;
+    }
+
+    /**
+     * Returns the number of occurrences of the value in the multiset.
+     *
+     * @param value the value.
+     * @return the number of occurrences.
+     */
+    public int count(long value) {
+        int slot = find(value);
+        return counts[slot] == 0 ? 0 : counts[slot] - 1;
+    }
+
+    /**
+     * Returns the number of values in the multiset, counting multiplicities.
+     *
+     * @return the number of values.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the multiset is empty.
+     *
+     * @return {@code true} if the multiset is empty, {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Finds the slot which contains the value, or the empty slot where it shall be put.
+     */
+    private int find(long value) {
+        int mask = keys.length - 1;
+        int slot = hash(value) & mask;
+        while (counts[slot] != 0 && keys[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Moves the values to a new table, twice as large unless many values have been removed completely.
+     */
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int live = 0;
+        for (int count : oldCounts) {
+            if (count > 1) {
+                ++live;
+            }
+        }
+        int capacity = live * 2 > oldKeys.length / 4 * 3 ? oldKeys.length * 2 : oldKeys.length;
+        if (capacity < 0) {
+            throw new IllegalStateException("The multiset is too large");
+        }
+        keys = new long[capacity];
+        counts = new int[capacity];
+        usedSlots = 0;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldCounts[i] > 1) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                ++usedSlots;
+            }
+        }
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads the values well enough for linear probing.
+     */
+    private static int hash(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
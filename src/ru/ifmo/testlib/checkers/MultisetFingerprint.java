@@ -0,0 +1,122 @@
+package ru.ifmo.testlib.checkers;
+
+import java.util.SplittableRandom;
+
+/**
+ * An order-independent fingerprint of a multiset of elements, which are sequences of characters or {@code long} values.
+ * Two fingerprints of equal multisets are always equal, and two fingerprints of different multisets
+ * are equal with the probability of at most about {@code n / 2^61} squared, where {@code n} is the total length
+ * of the elements, over the random choice of the parameters, which is made once per run.
+ *
+ * Each element is hashed as a polynomial of a random point modulo the prime {@code 2^61 - 1},
+ * and the fingerprint of the multiset is the product of {@code (z - h)} over the hashes {@code h} of the elements,
+ * which is the value of a polynomial whose roots are exactly the hashes, at another random point {@code z}.
+ * This is done twice with independent parameters, so the fingerprint has two 61-bit components.
+ * No memory is used besides the fingerprint itself, so multisets of any size can be compared in linear time.
+ *
+ * @author Maxim Buzdalov
+ */
+public final class MultisetFingerprint {
+    /** The prime modulus. */
+    private static final long MODULUS = (1L << 61) - 1;
+
+    private static final long HASH_POINT_1, HASH_POINT_2, ROOT_POINT_1, ROOT_POINT_2;
+
+    static {
+        SplittableRandom random = new SplittableRandom();
+        HASH_POINT_1 = randomPoint(random);
+        HASH_POINT_2 = randomPoint(random);
+        ROOT_POINT_1 = randomPoint(random);
+        ROOT_POINT_2 = randomPoint(random);
+    }
+
+    /** The hashes of the element which is being appended to. */
+    private long element1, element2;
+
+    /** The components of the fingerprint. */
+    private long product1 = 1, product2 = 1;
+
+    /** The number of elements. */
+    private long count;
+
+    /**
+     * Appends a character to the current element.
+     *
+     * @param c the character.
+     */
+    public void append(int c) {
+        element1 = reduce(multiply(element1, HASH_POINT_1) + (c & 0xFFFFFFFFL) + 1);
+        element2 = reduce(multiply(element2, HASH_POINT_2) + (c & 0xFFFFFFFFL) + 1);
+    }
+
+    /**
+     * Adds the current element, which consists of the characters appended since the previous element, to the multiset.
+     *
+     * @return the 64-bit hash of the element, which can be used to compare elements
+     *         with a small probability of collision, for instance, with a {@link LongMultiset}.
+     */
+    public long endElement() {
+        product1 = multiply(product1, reduce(MODULUS - element1 + ROOT_POINT_1));
+        product2 = multiply(product2, reduce(MODULUS - element2 + ROOT_POINT_2));
+        ++count;
+        long hash = element1 ^ Long.rotateLeft(element2, 32);
+        element1 = element2 = 0;
+        return hash;
+    }
+
+    /**
+     * Adds an element which is a {@code long} value to the multiset.
+     * The value shall not be mixed with characters appended before it in the same element.
+     *
+     * @param value the value.
+     * @return the 64-bit hash of the element, see {@link #endElement()}.
+     */
+    public long add(long value) {
+        append((int) (value >>> 32));
+        append((int) value);
+        return endElement();
+    }
+
+    /**
+     * Returns the number of elements in the multiset.
+     *
+     * @return the number of elements.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Checks whether this fingerprint is equal to the other one,
+     * that is, whether their multisets are equal with a very high probability.
+     *
+     * @param other the other fingerprint.
+     * @return {@code true} if the fingerprints are equal, {@code false} if the multisets are certainly different.
+     */
+    public boolean matches(MultisetFingerprint other) {
+        return count == other.count && product1 == other.product1 && product2 == other.product2;
+    }
+
+    /**
+     * Returns a product modulo {@link #MODULUS} of two numbers less than {@code 2^61}.
+     */
+    private static long multiply(long a, long b) {
+        long aHigh = a >>> 31, aLow = a & 0x7FFFFFFFL;
+        long bHigh = b >>> 31, bLow = b & 0x7FFFFFFFL;
+        long middle = aLow * bHigh + aHigh * bLow;
+        // 2^62 is 2 and 2^61 is 1 modulo 2^61 - 1. The sum may overflow to the sign bit, which reduce() handles.
+        return reduce((aHigh * bHigh << 1) + (middle >>> 30) + ((middle & 0x3FFFFFFFL) << 31) + aLow * bLow);
+    }
+
+    /**
+     * Reduces an unsigned 64-bit number modulo {@link #MODULUS}.
+     */
+    private static long reduce(long value) {
+        value = (value & MODULUS) + (value >>> 61);
+        return value >= MODULUS ? value - MODULUS : value;
+    }
+
+    private static long randomPoint(SplittableRandom random) {
+        return 2 + random.nextLong(MODULUS - 3);
+    }
+}
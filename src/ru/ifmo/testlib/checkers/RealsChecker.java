@@ -0,0 +1,81 @@
+package ru.ifmo.testlib.checkers;
+
+import ru.ifmo.testlib.Checker;
+import ru.ifmo.testlib.InStream;
+import ru.ifmo.testlib.Outcome;
+
+import static ru.ifmo.testlib.Outcome.Type.*;
+
+/**
+ * A checker which compares the output and the answer as sequences of real numbers,
+ * regardless of the whitespace between them. A number is accepted if either its absolute error
+ * or its relative error does not exceed the given tolerance.
+ *
+ * When run directly, the tolerance is given by the {@code testlib.reals.tolerance} property, which is {@code 1e-6} by default.
+ * To have another fixed tolerance, subclass this checker and use the {@link #RealsChecker(double)} constructor.
+ *
+ * @author Maxim Buzdalov
+ */
+public class RealsChecker implements Checker {
+    private static final String TOLERANCE_PROPERTY = "testlib.reals.tolerance";
+
+    /** A small slack which allows for the errors of the decimal representation itself. */
+    private static final double SLACK = 1e-15;
+
+    private final double tolerance;
+
+    /**
+     * Creates a checker with the tolerance given by the {@code testlib.reals.tolerance} property.
+     */
+    public RealsChecker() {
+        this(Double.parseDouble(System.getProperty(TOLERANCE_PROPERTY, "1e-6")));
+    }
+
+    /**
+     * Creates a checker with the given tolerance.
+     *
+     * @param tolerance the maximum absolute or relative error.
+     */
+    public RealsChecker(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Checks whether the found number is close enough to the expected one.
+     *
+     * @param expected the expected number.
+     * @param found the found number.
+     * @param tolerance the maximum absolute or relative error.
+     * @return {@code true} if the absolute or the relative error does not exceed the tolerance.
+     */
+    public static boolean isClose(double expected, double found, double tolerance) {
+        if (Math.abs(found - expected) <= tolerance + SLACK) {
+            return true;
+        }
+        double bound1 = expected * (1 - tolerance);
+        double bound2 = expected * (1 + tolerance);
+        return Math.min(bound1, bound2) <= found + SLACK && found <= Math.max(bound1, bound2) + SLACK;
+    }
+
+    public Outcome test(InStream inf, InStream ouf, InStream ans) {
+        int count = 0;
+        while (!ans.seekEoF()) {
+            if (ouf.seekEoF()) {
+                return Outcome.of(PE, "After %d matched number(s), the output lacks %d more elements",
+                        count, Words.skipAll(ans));
+            }
+            double expected = ans.nextDouble();
+            double found = ouf.nextDouble();
+            ++count;
+            if (!isClose(expected, found, tolerance)) {
+                return Outcome.of(WA, "Number %d differs: expected %s, found %s, error %s",
+                        count, expected, found, Math.abs(found - expected));
+            }
+        }
+        if (!ouf.seekEoF()) {
+            return Outcome.of(PE, "After %d matched number(s), the output contains %d extra elements",
+                    count, Words.skipAll(ouf));
+        }
+        return Outcome.of(OK, "%d number(s)", count);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.ifmo.testlib.checkers;
+
+import ru.ifmo.testlib.Checker;
+import ru.ifmo.testlib.InStream;
+import ru.ifmo.testlib.Outcome;
+
+import static ru.ifmo.testlib.Outcome.Type.*;
+
+/**
+ * A base for the checkers which compare the output and the answer as multisets of elements, that is,
+ * regardless of the order of the elements.
+ *
+ * The multisets are first compared by their {@link MultisetFingerprint}s, which takes linear time and no memory.
+ * Only if the fingerprints differ, the files are read again to find an element of the output
+ * which is not in the answer, using a {@link LongMultiset} of the element keys.
+ *
+ * @author Maxim Buzdalov
+ */
+abstract class UnorderedChecker implements Checker {
+    /** The name of the elements to be used in the messages. */
+    private final String elementName;
+
+    private final Excerpt element = new Excerpt();
+
+    /**
+     * Creates a checker with the given name of the elements.
+     *
+     * @param elementName the name of the elements to be used in the messages.
+     */
+    UnorderedChecker(String elementName) {
+        this.elementName = elementName;
+    }
+
+    /**
+     * Skips to the next element in the stream.
+     *
+     * @param stream the stream.
+     * @return {@code true} if there is the next element, {@code false} if there are no more elements.
+     */
+    abstract boolean seekElement(InStream stream);
+
+    /**
+     * Reads the element, adds it to the fingerprint, and returns its key.
+     *
+     * @param stream the stream, which is positioned at the beginning of the element.
+     * @param fingerprint the fingerprint to add the element to.
+     * @param element the excerpt to append the text of the element to, or {@code null} if it is not needed.
+     * @return the key of the element, which is either the element itself or its hash.
+     */
+    abstract long readElement(InStream stream, MultisetFingerprint fingerprint, Excerpt element);
+
+    public Outcome test(InStream inf, InStream ouf, InStream ans) {
+        MultisetFingerprint expected = new MultisetFingerprint();
+        MultisetFingerprint found = new MultisetFingerprint();
+        while (seekElement(ans)) {
+            readElement(ans, expected, null);
+        }
+        while (seekElement(ouf)) {
+            readElement(ouf, found, null);
+        }
+        if (expected.count() != found.count()) {
+            return Outcome.of(PE, "The output contains %d %s(s), but the answer contains %d",
+                    found.count(), elementName, expected.count());
+        }
+        if (expected.matches(found)) {
+            return Outcome.of(OK, "%d %s(s)", expected.count(), elementName);
+        }
+
+        ans.reset();
+        ouf.reset();
+        LongMultiset keys = new LongMultiset();
+        while (seekElement(ans)) {
+            keys.add(readElement(ans, expected, null));
+        }
+        long index = 0;
+        while (seekElement(ouf)) {
+            ++index;
+            element.clear();
+            if (!keys.remove(readElement(ouf, found, element))) {
+                return Outcome.of(WA, "The %s %d of the output, '%s', is not in the answer or occurs there fewer times",
+                        elementName, index, element.toString());
+            }
+        }
+        // The fingerprints prove the multisets are different, but the keys, which are hashes, have collided.
+        return Outcome.of(WA, "The multisets of %ss are different", elementName);
+    }
+}
@@ -0,0 +1,30 @@
+package ru.ifmo.testlib.checkers;
+
+import ru.ifmo.testlib.InStream;
+
+/**
+ * A checker which compares the output and the answer as multisets of 64-bit signed integers,
+ * regardless of their order and the whitespace between them.
+ *
+ * @author Maxim Buzdalov
+ */
+public class UnorderedIntegersChecker extends UnorderedChecker {
+    public UnorderedIntegersChecker() {
+        super("number");
+    }
+
+    @Override
+    boolean seekElement(InStream stream) {
+        return !stream.seekEoF();
+    }
+
+    @Override
+    long readElement(InStream stream, MultisetFingerprint fingerprint, Excerpt element) {
+        long value = stream.nextLong();
+        fingerprint.add(value);
+        if (element != null) {
+            element.append(Long.toString(value));
+        }
+        return value;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.ifmo.testlib.checkers;
+
+import ru.ifmo.testlib.InStream;
+
+/**
+ * A checker which compares the output and the answer as multisets of lines, regardless of their order,
+ * where each line is a sequence of words, regardless of the spaces and tabs between them.
+ * Empty lines are ignored.
+ *
+ * @author Maxim Buzdalov
+ */
+public class UnorderedLinesChecker extends UnorderedChecker {
+    public UnorderedLinesChecker() {
+        super("line");
+    }
+
+    @Override
+    boolean seekElement(InStream stream) {
+        while (stream.seekEoLn()) {
+            if (stream.isEoF()) {
+                return false;
+            }
+            stream.skipLine();
+        }
+        return true;
+    }
+
+    @Override
+    long readElement(InStream stream, MultisetFingerprint fingerprint, Excerpt element) {
+        long limit = stream.maxTokenLength();
+        boolean isFirstWord = true;
+        while (!stream.seekEoLn()) {
+            if (!isFirstWord) {
+                fingerprint.append(' ');
+                if (element != null) {
+                    element.append(' ');
+                }
+            }
+            isFirstWord = false;
+            long length = 0;
+            int c;
+            while (!Words.isDelimiter(c = stream.currChar())) {
+                if (length++ == limit) {
+                    throw Words.tokenTooLong(stream, limit);
+                }
+                fingerprint.append(c);
+                if (element != null) {
+                    element.append((char) c);
+                }
+                stream.nextChar();
+            }
+        }
+        stream.skipLine();
+        return fingerprint.endElement();
+    }
+}
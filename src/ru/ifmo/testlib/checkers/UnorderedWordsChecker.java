@@ -0,0 +1,38 @@
+package ru.ifmo.testlib.checkers;
+
+import ru.ifmo.testlib.InStream;
+
+/**
+ * A checker which compares the output and the answer as multisets of words,
+ * regardless of their order and the whitespace between them.
+ *
+ * @author Maxim Buzdalov
+ */
+public class UnorderedWordsChecker extends UnorderedChecker {
+    public UnorderedWordsChecker() {
+        super("word");
+    }
+
+    @Override
+    boolean seekElement(InStream stream) {
+        return !stream.seekEoF();
+    }
+
+    @Override
+    long readElement(InStream stream, MultisetFingerprint fingerprint, Excerpt element) {
+        long limit = stream.maxTokenLength();
+        long length = 0;
+        int c;
+        while (!Words.isDelimiter(c = stream.currChar())) {
+            if (length++ == limit) {
+                throw Words.tokenTooLong(stream, limit);
+            }
+            fingerprint.append(c);
+            if (element != null) {
+                element.append((char) c);
+            }
+            stream.nextChar();
+        }
+        return fingerprint.endElement();
+    }
+}
@@ -0,0 +1,132 @@
+package ru.ifmo.testlib.checkers;
+
+import ru.ifmo.testlib.InStream;
+import ru.ifmo.testlib.Outcome;
+
+import static ru.ifmo.testlib.Outcome.Type.PE;
+
+/**
+ * Helpers for comparing words, which are maximal sequences of non-whitespace characters,
+ * character by character, without creating strings for the words which are equal.
+ *
+ * @author Maxim Buzdalov
+ */
+final class Words {
+    private Words() {}
+
+    /**
+     * Checks whether the given character terminates a word.
+     *
+     * @param c the character.
+     * @return {@code true} if the character is whitespace or denotes the end of file, {@code false} otherwise.
+     */
+    static boolean isDelimiter(int c) {
+        return c == InStream.EOF_CHAR || Character.isWhitespace(c);
+    }
+
+    /**
+     * Reads the next word from both streams, which shall be positioned at the beginnings of the words,
+     * and checks whether the words are equal. If they are not, the excerpts of the words are stored.
+     * The words are read up to the limits on the length of a token of the streams, see {@link InStream#maxTokenLength()}.
+     *
+     * @param expected the stream to read the expected word from.
+     * @param found the stream to read the found word from.
+     * @param expectedWord the excerpt to store the expected word to.
+     * @param foundWord the excerpt to store the found word to.
+     * @return {@code true} if the words are equal, {@code false} otherwise.
+     */
+    static boolean compare(InStream expected, InStream found, Excerpt expectedWord, Excerpt foundWord) {
+        long expectedLimit = expected.maxTokenLength();
+        long foundLimit = found.maxTokenLength();
+        expectedWord.clear();
+        foundWord.clear();
+        while (true) {
+            int e = expected.currChar();
+            int f = found.currChar();
+            boolean expectedEnds = isDelimiter(e);
+            boolean foundEnds = isDelimiter(f);
+            if (expectedEnds && foundEnds) {
+                return true;
+            }
+            if (expectedEnds || foundEnds || e != f) {
+                read(expected, expectedWord);
+                read(found, foundWord);
+                return false;
+            }
+            long length = expectedWord.length();
+            if (length == expectedLimit) {
+                throw tokenTooLong(expected, expectedLimit);
+            }
+            if (length == foundLimit) {
+                throw tokenTooLong(found, foundLimit);
+            }
+            expectedWord.append((char) e);
+            foundWord.append((char) e);
+            expected.nextChar();
+            found.nextChar();
+        }
+    }
+
+    /**
+     * Reads the rest of the current word from the stream and appends it to the given excerpt,
+     * up to the limit on the length of a token of the stream.
+     *
+     * @param stream the stream.
+     * @param word the excerpt to append the word to.
+     */
+    static void read(InStream stream, Excerpt word) {
+        long limit = stream.maxTokenLength();
+        while (!isDelimiter(stream.currChar())) {
+            if (word.length() == limit) {
+                throw tokenTooLong(stream, limit);
+            }
+            word.append((char) stream.nextChar());
+        }
+    }
+
+    /**
+     * Skips all the remaining words in the stream, up to the limit on the length of a token of the stream.
+     *
+     * @param stream the stream.
+     * @return the number of words skipped.
+     */
+    static int skipAll(InStream stream) {
+        long limit = stream.maxTokenLength();
+        int count = 0;
+        while (!stream.seekEoF()) {
+            long length = 0;
+            while (!isDelimiter(stream.currChar())) {
+                if (length++ == limit) {
+                    throw tokenTooLong(stream, limit);
+                }
+                stream.nextChar();
+            }
+            ++count;
+        }
+        return count;
+    }
+
+    /**
+     * Quits as the stream does when a token is too long.
+     *
+     * @param stream the stream.
+     * @param limit the limit on the length of a token of the stream.
+     * @return nothing, since the outcome is always thrown.
+     */
+    static Outcome tokenTooLong(InStream stream, long limit) {
+        throw stream.quit(PE, "A token is too long: more than %d characters", limit);
+    }
+
+    /**
+     * Returns the word, shortened if it is too long to be shown in a message.
+     *
+     * @param word the word.
+     * @return the shortened word.
+     */
+    static String shorten(CharSequence word) {
+        if (word.length() <= 64) {
+            return word.toString();
+        }
+        return word.subSequence(0, 32) + "..." + word.subSequence(word.length() - 32, word.length());
+    }
+}
@@ -0,0 +1,44 @@
+package ru.ifmo.testlib.checkers;
+
+import ru.ifmo.testlib.Checker;
+import ru.ifmo.testlib.InStream;
+import ru.ifmo.testlib.Outcome;
+
+import static ru.ifmo.testlib.Outcome.Type.*;
+
+/**
+ * A checker which compares the output and the answer as sequences of words, regardless of the whitespace between them.
+ * The files are first compared in large blocks of bytes, see {@link InStream#matchWords(InStream)},
+ * and only if they differ, words are compared character by character to find the difference,
+ * so no strings are created unless the words differ.
+ *
+ * @author Maxim Buzdalov
+ */
+public class WordsChecker implements Checker {
+    private final Excerpt expectedWord = new Excerpt();
+    private final Excerpt foundWord = new Excerpt();
+
+    public Outcome test(InStream inf, InStream ouf, InStream ans) {
+        long matched = ans.matchWords(ouf);
+        if (matched >= 0) {
+            return Outcome.of(OK, "%d word(s)", matched);
+        }
+        int count = 0;
+        while (!ans.seekEoF()) {
+            if (ouf.seekEoF()) {
+                return Outcome.of(PE, "After %d matched word(s), the output lacks %d more elements",
+                        count, Words.skipAll(ans));
+            }
+            ++count;
+            if (!Words.compare(ans, ouf, expectedWord, foundWord)) {
+                return Outcome.of(WA, "Word %d differs: expected '%s', found '%s'",
+                        count, expectedWord.toString(), foundWord.toString());
+            }
+        }
+        if (!ouf.seekEoF()) {
+            return Outcome.of(PE, "After %d matched word(s), the output contains %d extra elements",
+                    count, Words.skipAll(ouf));
+        }
+        return Outcome.of(OK, "%d word(s)", count);
+    }
+}
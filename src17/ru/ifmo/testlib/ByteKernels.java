@@ -0,0 +1,116 @@
+package ru.ifmo.testlib;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * The byte-level kernels of the reading hot paths for Java 17 and later, see the baseline implementation
+ * in the main source tree for the contracts. The bytes are processed eight at a time through a {@code VarHandle}
+ * view of the byte array, and blocks are compared by the intrinsified {@link Arrays#mismatch(byte[], int, int, byte[], int, int)}.
+ * The delimiter sets are tested by their ranges of ASCII members, unless there are too many of them.
+ *
+ * @author Maxim Buzdalov
+ */
+final class ByteKernels {
+    private ByteKernels() {}
+
+    static final String VARIANT = "java17";
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    static int indexOfSpaceOrBelow(byte[] bytes, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = (long) LONGS.get(bytes, i);
+            // For a byte below 0x80, adding 0x5F sets its high bit if and only if it is above the space.
+            // The sum does not carry to the next byte, and the bytes from 0x80 up are non-ASCII anyway.
+            long found = (word | ~((word & ~HIGH_BITS) + 0x5F * ONES)) & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; ++i) {
+            if (bytes[i] <= ' ') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    static int indexOfMember(byte[] bytes, int from, int to, DelimiterSet set) {
+        int[] addends = set.rangeAddends;
+        int i = from;
+        if (addends != null) {
+            for (; i + 8 <= to; i += 8) {
+                long word = (long) LONGS.get(bytes, i);
+                long found = (members(word, addends) | word) & HIGH_BITS;
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < to; ++i) {
+            byte b = bytes[i];
+            if (b < 0 || set.containsAscii(b)) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    static int indexOfNonMember(byte[] bytes, int from, int to, DelimiterSet set) {
+        int[] addends = set.rangeAddends;
+        int i = from;
+        if (addends != null) {
+            for (; i + 8 <= to; i += 8) {
+                long word = (long) LONGS.get(bytes, i);
+                long found = ~members(word, addends) & HIGH_BITS;
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < to; ++i) {
+            if (!set.containsAscii(bytes[i])) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Tests eight bytes against the ranges of a set at once.
+     *
+     * @return the word where the high bit of a byte is set if and only if the byte is an ASCII member of the set.
+     */
+    private static long members(long word, int[] addends) {
+        long ascii = word & ~HIGH_BITS;
+        long result = 0;
+        for (int r = 0; r < addends.length; r += 2) {
+            // The sums do not carry to the next byte, since the seven low bits plus an addend are below 0x100.
+            result |= (ascii + addends[r] * ONES) & ~(ascii + addends[r + 1] * ONES);
+        }
+        return result & ~word & HIGH_BITS;
+    }
+
+    static int parseEightDigits(byte[] bytes, int index) {
+        long word = (long) LONGS.get(bytes, index);
+        // Every byte shall be 0x3X, and stay so after adding 6, which means X is at most 9.
+        if (((word & 0xF0F0F0F0F0F0F0F0L) | ((word + 6 * ONES) & 0xF0F0F0F0F0F0F0F0L) >>> 4) != 0x3333333333333333L) {
+            return -1;
+        }
+        // The first digit is the lowest byte, so pairs, quadruples and then octets of digits are combined.
+        word = (word & 0x0F0F0F0F0F0F0F0FL) * 2561 >>> 8;
+        word = (word & 0x00FF00FF00FF00FFL) * 6553601 >>> 16;
+        return (int) ((word & 0x0000FFFF0000FFFFL) * 42949672960001L >>> 32);
+    }
+
+    static int mismatch(byte[] a, int aFrom, byte[] b, int bFrom, int length) {
+        return Arrays.mismatch(a, aFrom, aFrom + length, b, bFrom, bFrom + length);
+    }
+}